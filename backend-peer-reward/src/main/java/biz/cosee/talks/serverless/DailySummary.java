@@ -0,0 +1,56 @@
+package biz.cosee.talks.serverless;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DailySummary {
+
+    // UTC day the rewards were stored on, e.g. 2016-10-05
+    private String day;
+
+    private int count;
+    private int amount;
+
+    // one entry per giver and receiver, ordered by giver and receiver
+    private List<PairTotal> totals;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class PairTotal {
+        private String givenByUsername;
+        private String rewardedUser;
+
+        private int count;
+        private int amount;
+    }
+
+    public static DailySummary summarize(String day, Collection<Reward> rewards) {
+        Map<String, Map<String, PairTotal>> pairs = new TreeMap<>();
+        int amount = 0;
+        for (Reward reward : rewards) {
+            PairTotal total = pairs.computeIfAbsent(reward.getGivenByUsername(), giver -> new TreeMap<>())
+                    .computeIfAbsent(reward.getRewardedUser(), receiver -> new PairTotal(reward.getGivenByUsername(), receiver, 0, 0));
+            total.setCount(total.getCount() + 1);
+            total.setAmount(total.getAmount() + reward.getAmount());
+            amount += reward.getAmount();
+        }
+
+        List<PairTotal> totals = new ArrayList<>();
+        pairs.values().forEach(receivers -> totals.addAll(receivers.values()));
+        return new DailySummary(day, rewards.size(), amount, totals);
+    }
+}
@@ -0,0 +1,14 @@
+package biz.cosee.talks.serverless;
+
+import lombok.Value;
+
+import java.util.List;
+
+@Value
+public class RewardPage {
+
+    private List<Reward> rewards;
+
+    // null on the last page
+    private String cursor;
+}
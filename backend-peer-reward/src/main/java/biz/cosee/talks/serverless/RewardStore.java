@@ -0,0 +1,80 @@
+package biz.cosee.talks.serverless;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+// what the handlers need from a storage engine, rewards are handed out ts descending. The one exception is the full
+// history streamed or paged, which may come in storage order: it is read as it is sent and never held to be sorted.
+public interface RewardStore {
+
+    // leaderboard period spanning all rewards, the others are UTC months like 2016-10
+    String ALL_TIME = "all";
+
+    int DEFAULT_REWARDS_PER_USER = 100;
+
+    void checkAndCreateTables() throws InterruptedException;
+
+    void rewardUser(Reward reward);
+
+    void rewardUsers(List<Reward> rewards);
+
+    // for callers overlapping independent requests, engines doing I/O send it from their own pool
+    CompletableFuture<Void> rewardUserAsync(Reward reward);
+
+    // returns how many counter shards were merged, engines without shards return 0
+    int consolidateUserCounters();
+
+    // adds counter deltas that failed after their rewards were stored, until then coins and leaderboards lag behind.
+    // Returns how many were added, engines updating everything at once return 0
+    int reapplyPendingDeltas();
+
+    // folds finished days into daily summaries, returns how many days were compacted
+    int compactFinishedDays();
+
+    // same for the finished days from..to, to backfill history older than the nightly lookback
+    int compactDays(LocalDate from, LocalDate to);
+
+    // since 0 or less is the full history. Engines reading day by day reject other windows longer than they query
+    // with an IllegalArgumentException
+    List<Reward> retrieveRewardsSince(Long epochMillis);
+
+    // same order as streamRewardsSince
+    RewardPage retrieveRewardsSince(Long epochMillis, String cursor, int pageSize);
+
+    // ts descending, for since 0 or less in the engine's storage order
+    Stream<Reward> streamRewardsSince(Long epochMillis);
+
+    default List<Reward> retrieveRewardsLast(int count) {
+        return retrieveRewardsLast(count, null).getRewards();
+    }
+
+    RewardPage retrieveRewardsLast(int count, String cursor);
+
+    default List<Reward> retrieveRewardsContaining(User user) {
+        return retrieveRewardsContaining(user, DEFAULT_REWARDS_PER_USER);
+    }
+
+    List<Reward> retrieveRewardsContaining(User user, int limit);
+
+    // every day from the first to the last, up to today, oldest first
+    List<DailySummary> retrieveDailySummaries(LocalDate from, LocalDate to);
+
+    List<User> retrieveLeaderboard(String period, int limit);
+
+    List<User> retrieveUsers(Collection<User> users);
+
+    List<User> retrieveUsers();
+
+    // username and totalRewards only, coinsGiven stays null
+    List<User> retrieveUserSummaries(Collection<User> users);
+
+    List<User> retrieveUserSummaries();
+
+    CompletableFuture<List<User>> retrieveUserSummariesAsync();
+
+    // changes with every write, read before the data: a response may be newer than its version, never older
+    long retrieveVersion();
+}
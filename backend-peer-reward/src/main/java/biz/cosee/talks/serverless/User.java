@@ -1,5 +1,6 @@
 package biz.cosee.talks.serverless;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -15,5 +16,7 @@ public class User {
 
     private String username;
     private int rewards;
+    // null in summaries
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     private Map<String, Integer> coinsGiven;
 }
@@ -0,0 +1,28 @@
+package biz.cosee.talks.serverless.dynamodb;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+class Backoff {
+
+    private static final long BASE_DELAY_MILLIS = 50;
+    private static final long MAX_DELAY_MILLIS = 5_000;
+    private static final int MAX_ATTEMPTS = 10;
+
+    private Backoff() {
+    }
+
+    // full jitter: a random delay between zero and the exponentially growing cap
+    static void sleep(int attempt) {
+        if (attempt >= MAX_ATTEMPTS) {
+            throw new IllegalStateException("Giving up on unprocessed DynamoDB items after " + attempt + " retries");
+        }
+
+        long cap = Math.min(MAX_DELAY_MILLIS, BASE_DELAY_MILLIS << attempt);
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(cap + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while backing off", e);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package biz.cosee.talks.serverless.dynamodb;
+
+import lombok.Value;
+
+@Value
+public class CacheStats {
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private int size;
+
+}
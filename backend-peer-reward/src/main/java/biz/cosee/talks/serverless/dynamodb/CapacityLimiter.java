@@ -0,0 +1,275 @@
+package biz.cosee.talks.serverless.dynamodb;
+
+import biz.cosee.talks.serverless.metrics.ConsumedCapacities;
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.*;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import static java.util.stream.Collectors.toList;
+
+// paces this container's requests to each table's provisioned capacity instead of running into throttling and the
+// SDK's retries. The cost of a request is read back from its consumed capacity, which is requested on every call.
+// The capacity is what DescribeTable reports, the configured units only stand in when the table can't be described.
+@Slf4j
+class CapacityLimiter {
+
+    // auto scaling moves the provisioned units, throttling rereads them but not more often than this
+    private static final long REFRESH_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final double readUnitsPerSecond;
+    private final double writeUnitsPerSecond;
+    private final LongSupplier nanoClock;
+
+    private final ConcurrentMap<String, Throughput> throughputs = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, TokenBucket> reads = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, TokenBucket> writes = new ConcurrentHashMap<>();
+
+    CapacityLimiter(double readUnitsPerSecond, double writeUnitsPerSecond) {
+        this(readUnitsPerSecond, writeUnitsPerSecond, System::nanoTime);
+    }
+
+    CapacityLimiter(double readUnitsPerSecond, double writeUnitsPerSecond, LongSupplier nanoClock) {
+        this.readUnitsPerSecond = readUnitsPerSecond;
+        this.writeUnitsPerSecond = writeUnitsPerSecond;
+        this.nanoClock = nanoClock;
+    }
+
+    @Value
+    private static class Throughput {
+        double readUnitsPerSecond;
+        double writeUnitsPerSecond;
+        long describedAt;
+
+        double units(boolean read) {
+            return read ? readUnitsPerSecond : writeUnitsPerSecond;
+        }
+    }
+
+    AmazonDynamoDB wrap(AmazonDynamoDB client) {
+        return (AmazonDynamoDB) Proxy.newProxyInstance(AmazonDynamoDB.class.getClassLoader(),
+                new Class<?>[]{AmazonDynamoDB.class}, (proxy, method, args) -> invoke(client, method, args));
+    }
+
+    // the pace a table is currently held to, 0 if it is not paced
+    double rate(String table, boolean read) {
+        TokenBucket bucket = (read ? reads : writes).get(table);
+        return bucket == null ? 0 : bucket.rate();
+    }
+
+    private Object invoke(AmazonDynamoDB client, Method method, Object[] args) throws Throwable {
+        Object request = args != null && args.length == 1 ? args[0] : null;
+        List<String> tables = tables(request);
+        // control plane calls and waiters are not paced
+        if (tables.isEmpty()) {
+            return call(client, method, args);
+        }
+
+        boolean read = isRead(request);
+        for (String table : tables) {
+            TokenBucket bucket = bucket(client, table, read);
+            if (bucket != null) {
+                bucket.acquire();
+            }
+        }
+        requestIndexCapacity(request);
+
+        try {
+            Object result = call(client, method, args);
+            for (ConsumedCapacity capacity : ConsumedCapacities.of(result)) {
+                TokenBucket bucket = bucket(client, capacity.getTableName(), read);
+                if (bucket != null) {
+                    bucket.consume(tableUnits(capacity));
+                }
+            }
+            if (hasUnprocessed(result)) {
+                throttled(client, tables, read);
+            }
+            return result;
+        } catch (ProvisionedThroughputExceededException e) {
+            throttled(client, tables, read);
+            throw e;
+        }
+    }
+
+    private static Object call(AmazonDynamoDB client, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(client, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void throttled(AmazonDynamoDB client, List<String> tables, boolean read) {
+        for (String table : tables) {
+            refresh(client, table);
+            TokenBucket bucket = bucket(client, table, read);
+            if (bucket != null) {
+                bucket.throttled();
+                log.info("Throttled on {}, pacing at {} units/s", table, Math.round(bucket.rate()));
+            }
+        }
+    }
+
+    // tables without provisioned units are on demand and not paced
+    private TokenBucket bucket(AmazonDynamoDB client, String table, boolean read) {
+        double units = throughputs.computeIfAbsent(table, name -> describe(client, name)).units(read);
+        if (units <= 0) {
+            return null;
+        }
+        return (read ? reads : writes).computeIfAbsent(table, name -> new TokenBucket(units, nanoClock));
+    }
+
+    private void refresh(AmazonDynamoDB client, String table) {
+        Throughput current = throughputs.get(table);
+        if (current != null && nanoClock.getAsLong() - current.getDescribedAt() < REFRESH_INTERVAL_NANOS) {
+            return;
+        }
+
+        Throughput described = describe(client, table);
+        throughputs.put(table, described);
+        resize(reads, table, described.getReadUnitsPerSecond());
+        resize(writes, table, described.getWriteUnitsPerSecond());
+    }
+
+    private static void resize(ConcurrentMap<String, TokenBucket> buckets, String table, double units) {
+        if (units <= 0) {
+            buckets.remove(table);
+            return;
+        }
+        TokenBucket bucket = buckets.get(table);
+        if (bucket != null && bucket.budget() != units) {
+            log.info("Provisioned capacity of {} moved from {} to {} units/s", table, Math.round(bucket.budget()), Math.round(units));
+            bucket.resize(units);
+        }
+    }
+
+    // goes to the unwrapped client, describing is not paced
+    private Throughput describe(AmazonDynamoDB client, String table) {
+        long now = nanoClock.getAsLong();
+        try {
+            ProvisionedThroughputDescription provisioned = client.describeTable(table).getTable().getProvisionedThroughput();
+            return new Throughput(provisioned.getReadCapacityUnits(), provisioned.getWriteCapacityUnits(), now);
+        } catch (AmazonClientException e) {
+            log.warn("Could not describe {}, pacing to the configured capacity: {}", table, e.getMessage());
+            return new Throughput(readUnitsPerSecond, writeUnitsPerSecond, now);
+        }
+    }
+
+    // local indexes share the table's throughput, global ones are provisioned on their own and left out
+    private static double tableUnits(ConsumedCapacity capacity) {
+        if (capacity.getTable() == null) {
+            return capacity.getCapacityUnits() == null ? 0 : capacity.getCapacityUnits();
+        }
+
+        double units = capacity.getTable().getCapacityUnits();
+        if (capacity.getLocalSecondaryIndexes() != null) {
+            units += capacity.getLocalSecondaryIndexes().values().stream().mapToDouble(Capacity::getCapacityUnits).sum();
+        }
+        return units;
+    }
+
+    private static boolean isRead(Object request) {
+        return request instanceof QueryRequest
+                || request instanceof ScanRequest
+                || request instanceof GetItemRequest
+                || request instanceof BatchGetItemRequest
+                || request instanceof TransactGetItemsRequest;
+    }
+
+    private static List<String> tables(Object request) {
+        if (request instanceof QueryRequest) {
+            return Collections.singletonList(((QueryRequest) request).getTableName());
+        } else if (request instanceof ScanRequest) {
+            return Collections.singletonList(((ScanRequest) request).getTableName());
+        } else if (request instanceof GetItemRequest) {
+            return Collections.singletonList(((GetItemRequest) request).getTableName());
+        } else if (request instanceof PutItemRequest) {
+            return Collections.singletonList(((PutItemRequest) request).getTableName());
+        } else if (request instanceof UpdateItemRequest) {
+            return Collections.singletonList(((UpdateItemRequest) request).getTableName());
+        } else if (request instanceof DeleteItemRequest) {
+            return Collections.singletonList(((DeleteItemRequest) request).getTableName());
+        } else if (request instanceof BatchGetItemRequest) {
+            return new ArrayList<>(((BatchGetItemRequest) request).getRequestItems().keySet());
+        } else if (request instanceof BatchWriteItemRequest) {
+            return new ArrayList<>(((BatchWriteItemRequest) request).getRequestItems().keySet());
+        } else if (request instanceof TransactGetItemsRequest) {
+            return ((TransactGetItemsRequest) request).getTransactItems().stream()
+                    .map(item -> item.getGet().getTableName())
+                    .distinct()
+                    .collect(toList());
+        } else if (request instanceof TransactWriteItemsRequest) {
+            return ((TransactWriteItemsRequest) request).getTransactItems().stream()
+                    .map(CapacityLimiter::tableName)
+                    .filter(Objects::nonNull)
+                    .distinct()
+                    .collect(toList());
+        }
+        return Collections.emptyList();
+    }
+
+    private static String tableName(TransactWriteItem item) {
+        if (item.getPut() != null) {
+            return item.getPut().getTableName();
+        } else if (item.getUpdate() != null) {
+            return item.getUpdate().getTableName();
+        } else if (item.getDelete() != null) {
+            return item.getDelete().getTableName();
+        }
+        return item.getConditionCheck() == null ? null : item.getConditionCheck().getTableName();
+    }
+
+    // INDEXES still carries the TOTAL the metrics read, and splits off what global indexes consumed
+    private static void requestIndexCapacity(Object request) {
+        if (request instanceof QueryRequest) {
+            ((QueryRequest) request).setReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES);
+        } else if (request instanceof ScanRequest) {
+            ((ScanRequest) request).setReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES);
+        } else if (request instanceof GetItemRequest) {
+            ((GetItemRequest) request).setReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES);
+        } else if (request instanceof PutItemRequest) {
+            ((PutItemRequest) request).setReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES);
+        } else if (request instanceof UpdateItemRequest) {
+            ((UpdateItemRequest) request).setReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES);
+        } else if (request instanceof DeleteItemRequest) {
+            ((DeleteItemRequest) request).setReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES);
+        } else if (request instanceof BatchGetItemRequest) {
+            ((BatchGetItemRequest) request).setReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES);
+        } else if (request instanceof BatchWriteItemRequest) {
+            ((BatchWriteItemRequest) request).setReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES);
+        } else if (request instanceof TransactGetItemsRequest) {
+            ((TransactGetItemsRequest) request).withReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES);
+        } else if (request instanceof TransactWriteItemsRequest) {
+            ((TransactWriteItemsRequest) request).withReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES);
+        }
+    }
+
+    // DynamoDB hands back what it could not process when a table runs out of capacity
+    private static boolean hasUnprocessed(Object result) {
+        if (result instanceof BatchWriteItemResult) {
+            return !isEmpty(((BatchWriteItemResult) result).getUnprocessedItems());
+        } else if (result instanceof BatchGetItemResult) {
+            return !isEmpty(((BatchGetItemResult) result).getUnprocessedKeys());
+        }
+        return false;
+    }
+
+    private static boolean isEmpty(Map<?, ?> unprocessed) {
+        return unprocessed == null || unprocessed.isEmpty();
+    }
+}
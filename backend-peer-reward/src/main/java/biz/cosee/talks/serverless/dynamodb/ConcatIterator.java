@@ -0,0 +1,32 @@
+package biz.cosee.talks.serverless.dynamodb;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// flattens iterators one after another, the next source is only pulled once the current one is drained
+class ConcatIterator<T> implements Iterator<T> {
+
+    private final Iterator<? extends Iterator<T>> sources;
+    private Iterator<T> current = Collections.emptyIterator();
+
+    ConcatIterator(Iterator<? extends Iterator<T>> sources) {
+        this.sources = sources;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!current.hasNext() && sources.hasNext()) {
+            current = sources.next();
+        }
+        return current.hasNext();
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+}
@@ -1,44 +1,132 @@
 package biz.cosee.talks.serverless.dynamodb;
 
+import biz.cosee.talks.serverless.DailySummary;
 import biz.cosee.talks.serverless.Reward;
+import biz.cosee.talks.serverless.RewardPage;
+import biz.cosee.talks.serverless.RewardStore;
 import biz.cosee.talks.serverless.User;
+import biz.cosee.talks.serverless.metrics.Metrics;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.document.*;
+import com.amazonaws.services.dynamodbv2.document.spec.BatchWriteItemSpec;
+import com.amazonaws.services.dynamodbv2.document.spec.GetItemSpec;
 import com.amazonaws.services.dynamodbv2.document.spec.PutItemSpec;
 import com.amazonaws.services.dynamodbv2.document.spec.QuerySpec;
 import com.amazonaws.services.dynamodbv2.document.spec.ScanSpec;
 import com.amazonaws.services.dynamodbv2.document.spec.UpdateItemSpec;
 import com.amazonaws.services.dynamodbv2.model.*;
+import com.amazonaws.services.dynamodbv2.xspec.Condition;
 import com.amazonaws.services.dynamodbv2.xspec.ExpressionSpecBuilder;
 import com.amazonaws.services.dynamodbv2.xspec.ScanExpressionSpec;
+import com.amazonaws.services.dynamodbv2.xspec.PutItemExpressionSpec;
 import com.amazonaws.services.dynamodbv2.xspec.UpdateItemExpressionSpec;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDate;
+import java.time.YearMonth;
 import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
 import static com.amazonaws.services.dynamodbv2.xspec.ExpressionSpecBuilder.N;
 import static com.amazonaws.services.dynamodbv2.xspec.ExpressionSpecBuilder.S;
+import static java.util.Comparator.comparing;
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.joining;
 import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toMap;
+import static java.util.stream.Collectors.toSet;
 
 @Slf4j
-public class DynamodbAdapter {
+public class DynamodbAdapter implements RewardStore {
 
+    private static final int MAX_BATCH_WRITE_ITEMS = 25;
+    private static final int MAX_BATCH_GET_KEYS = 100;
+    // DynamoDB rejects larger transactions with a ValidationException
+    private static final int MAX_TRANSACTION_ITEMS = 25;
+    // the giver's user item takes the last slot of each migration transaction
+    private static final int MAX_LEGACY_COUNTERS_PER_MIGRATION = MAX_TRANSACTION_ITEMS - 1;
+    private static final int MAX_TRANSACTION_ATTEMPTS = 5;
+    private static final String TRANSACTION_CONFLICT = "TransactionConflict";
+    private static final String CONDITIONAL_CHECK_FAILED = "ConditionalCheckFailed";
+    // bulk rewards are put one by one, this many at once
+    private static final int MAX_REWARD_PUTS_IN_FLIGHT = 25;
+    static final String SHARD_SEPARATOR = "#";
+
+    // rewards stamped just before midnight may still be on their way, their day is left for the next run
+    private static final Duration COMPACTION_GRACE = Duration.ofMinutes(10);
+
+    private static final long SCAN_PAGE_BYTES = 1024 * 1024;
+    private static final int MAX_AUTO_SCAN_SEGMENTS = 16;
+
+    // counterOf is needed to fold counter shards into their owner
+    private static final String[] SUMMARY_ATTRIBUTES = {UserTable.USERNAME, UserTable.REWARDS, UserTable.COUNTER_OF};
+
+    // newest first, rewards sharing a millisecond are ordered by partition key so cursors are stable
+    private static final Comparator<Reward> REWARD_ORDER = comparing(Reward::getTs).reversed()
+            .thenComparing(Reward::getId, Comparator.reverseOrder());
+
+    private final AmazonDynamoDB amazonDynamoDB;
     private final DynamoDB dynamodb;
 
+    private final DynamodbSettings settings;
+    private final ExecutorService pool;
+    private final ExecutorService dayPool;
+    private final Executor executor;
+    private final Executor dayExecutor;
+
+    private final Metrics metrics = Metrics.global();
+
+    private final ReadCache cache;
+
+    private volatile int autoUserScanSegments;
+
+    // version the cached reads were loaded at, a newer one written by another container drops them
+    private volatile long cachedVersion = -1;
+
     private final String userTableName;
     private final String rewardTableName;
+    private final String leaderboardTableName;
+    private final String coinsTableName;
+    private final String summaryTableName;
 
     private interface UserTable {
         String USERNAME = "username";
         String REWARDS = "totalRewards";
+        // legacy per receiver counters, only read and migrated into the coins table
         String REWARDS_FOR_PREFIX = "rewardsFor:";
+
+        // set on counter shard items (username#n), which only hold a part of the owner's totalRewards
+        String COUNTER_OF = "counterOf";
     }
 
     private interface RewardTable {
@@ -48,17 +136,137 @@ public class DynamodbAdapter {
         String FROM_USER = "fromUser";
         String TO_USER = "toUser";
         String DESCRIPTION = "description";
+        // epoch seconds, only set with rewardTtlDays
+        String EXPIRES_AT = "expiresAt";
+
+        String FROM_USER_INDEX = "fromUser-ts-index";
+        String TO_USER_INDEX = "toUser-ts-index";
+    }
+
+    // amount given per giver and receiver, keeps the user items at a fixed size
+    private interface CoinsTable {
+        String GIVER = "giver";
+        String RECEIVER = "receiver";
+        String AMOUNT = "amount";
+    }
+
+    // received amounts per user, one partition per period: ALL_TIME or the UTC month of the reward
+    private interface LeaderboardTable {
+        String PERIOD = "period";
+        String USERNAME = "username";
+        String SCORE = "score";
+
+        String SCORE_INDEX = "period-score-index";
+    }
+
+    // a few items outside of every period, each write counts one of them up and their sum is the version. A counter
+    // rather than the last write's ts, rewards of two containers may well share a millisecond.
+    private interface VersionMarker {
+        String PERIOD = "#meta";
+        String USERNAME = "version";
+        String VERSION = "version";
+        int SHARDS = 8;
+    }
+
+    // a counter delta that could not be added after its rewards were stored, kept in a leaderboard partition of its
+    // own. Without a score it never shows up in the score index.
+    private interface PendingDelta {
+        String PERIOD = "#pending";
+        String TABLE = "table";
+        String KEY = "key";
+        String ATTRIBUTE = "attribute";
+        String DELTA = "delta";
+    }
+
+    // compacted days, one partition per UTC month. Every pair of giver and receiver gets an entry day#giver#receiver,
+    // the day's own entry holds its totals and is written last, so it also marks the day as compacted.
+    private interface SummaryTable {
+        String MONTH = "month";
+        String ENTRY = "entry";
+        String GIVER = "giver";
+        String RECEIVER = "receiver";
+        String COUNT = "rewards";
+        String AMOUNT = "amount";
+
+        // sorts right after the separator, so a bound of day + END takes in all of the day's pair entries
+        String END = "$";
     }
 
     public DynamodbAdapter(AmazonDynamoDB amazonDynamoDB, String tablePrefix) {
-        this.dynamodb = new DynamoDB(amazonDynamoDB);
+        this(amazonDynamoDB, tablePrefix, new DynamodbSettings());
+    }
+
+    public DynamodbAdapter(AmazonDynamoDB amazonDynamoDB, String tablePrefix, DynamodbSettings settings) {
+        this.amazonDynamoDB = settings.isPaceToProvisionedCapacity()
+                ? new CapacityLimiter(settings.getReadCapacityUnits(), settings.getWriteCapacityUnits()).wrap(amazonDynamoDB)
+                : amazonDynamoDB;
+        this.settings = settings;
+        this.dynamodb = new DynamoDB(this.amazonDynamoDB);
+        this.cache = new ReadCache(settings.getCacheTtlMillis(), settings.getCacheMaxEntries());
+        this.pool = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "dynamodb-adapter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // pool threads book their requests onto the operation that submitted them
+        this.executor = metrics.propagating(pool);
+        // whole days fan out on a bounded pool of their own, their shard queries still go to the shared one
+        this.dayPool = Executors.newFixedThreadPool(settings.getDayFanOut(), runnable -> {
+            Thread thread = new Thread(runnable, "dynamodb-adapter-days");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.dayExecutor = metrics.propagating(dayPool);
         this.userTableName = tablePrefix + "-users";
         this.rewardTableName = tablePrefix + "-rewards";
+        this.leaderboardTableName = tablePrefix + "-leaderboard";
+        this.coinsTableName = tablePrefix + "-coins";
+        this.summaryTableName = tablePrefix + "-daily-summaries";
+    }
+
+    public CacheStats cacheStats() {
+        return cache.stats();
     }
 
+    @Override
     public void checkAndCreateTables() throws InterruptedException {
+        metrics.time("checkAndCreateTables", () -> {
+            createMissingTables();
+            return null;
+        });
+    }
+
+    private void createMissingTables() throws InterruptedException {
+        Future<?> rewardTable = pool.submit(metrics.propagating(() -> {
+            checkAndCreateRewardTable();
+            return null;
+        }));
+        Future<Boolean> leaderboardCreated = pool.submit(metrics.propagating(this::checkAndCreateLeaderboardTable));
+        Future<Boolean> coinsCreated = pool.submit(metrics.propagating(this::checkAndCreateCoinsTable));
+        Future<?> summaryTable = pool.submit(metrics.propagating(() -> {
+            checkAndCreateSummaryTable();
+            return null;
+        }));
+        checkAndCreateUserTable();
+        await(rewardTable);
+        await(summaryTable);
+        if (settings.getRewardTtlDays() > 0) {
+            enableRewardExpiry();
+        }
+
+        // legacy counters may be written by older deployments after the coins table exists, the migration only moves
+        // what it finds and is run on every check
+        await(coinsCreated);
+        migrateLegacyCoins();
+        if (await(leaderboardCreated)) {
+            seedLeaderboard();
+        }
+    }
+
+    private void checkAndCreateRewardTable() throws InterruptedException {
         try {
-            dynamodb.getTable(rewardTableName).describe();
+            TableDescription description = dynamodb.getTable(rewardTableName).describe();
+            createMissingUserIndexes(description);
         } catch (ResourceNotFoundException rnfe) {
             dynamodb.createTable(new CreateTableRequest().withTableName(rewardTableName)
                     .withKeySchema(
@@ -66,12 +274,60 @@ public class DynamodbAdapter {
                             new KeySchemaElement(RewardTable.TS, KeyType.RANGE))
                     .withAttributeDefinitions(
                             new AttributeDefinition(RewardTable.ID, ScalarAttributeType.S),
-                            new AttributeDefinition(RewardTable.TS, ScalarAttributeType.N)
+                            new AttributeDefinition(RewardTable.TS, ScalarAttributeType.N),
+                            new AttributeDefinition(RewardTable.FROM_USER, ScalarAttributeType.S),
+                            new AttributeDefinition(RewardTable.TO_USER, ScalarAttributeType.S)
                     )
-                    .withProvisionedThroughput(new ProvisionedThroughput(100L, 100L))
+                    .withGlobalSecondaryIndexes(
+                            userIndex(RewardTable.FROM_USER_INDEX, RewardTable.FROM_USER),
+                            userIndex(RewardTable.TO_USER_INDEX, RewardTable.TO_USER))
+                    .withProvisionedThroughput(provisionedThroughput())
+            ).waitForActive();
+        }
+    }
+
+    private ProvisionedThroughput provisionedThroughput() {
+        return new ProvisionedThroughput(settings.getReadCapacityUnits(), settings.getWriteCapacityUnits());
+    }
+
+    private GlobalSecondaryIndex userIndex(String indexName, String userAttribute) {
+        return new GlobalSecondaryIndex()
+                .withIndexName(indexName)
+                .withKeySchema(
+                        new KeySchemaElement(userAttribute, KeyType.HASH),
+                        new KeySchemaElement(RewardTable.TS, KeyType.RANGE))
+                .withProjection(new Projection().withProjectionType(ProjectionType.ALL))
+                .withProvisionedThroughput(provisionedThroughput());
+    }
+
+    // tables created before the per user indexes get them added, DynamoDB backfills them online
+    private void createMissingUserIndexes(TableDescription description) throws InterruptedException {
+        val existingIndexes = Optional.ofNullable(description.getGlobalSecondaryIndexes())
+                .orElse(Collections.emptyList()).stream()
+                .map(GlobalSecondaryIndexDescription::getIndexName)
+                .collect(toSet());
+
+        Table rewardTable = dynamodb.getTable(rewardTableName);
+        for (val index : Arrays.asList(
+                userIndex(RewardTable.FROM_USER_INDEX, RewardTable.FROM_USER),
+                userIndex(RewardTable.TO_USER_INDEX, RewardTable.TO_USER))) {
+            if (existingIndexes.contains(index.getIndexName())) {
+                continue;
+            }
+
+            log.info("Adding index {} to {}", index.getIndexName(), rewardTableName);
+            rewardTable.createGSI(new CreateGlobalSecondaryIndexAction()
+                            .withIndexName(index.getIndexName())
+                            .withKeySchema(index.getKeySchema())
+                            .withProjection(index.getProjection())
+                            .withProvisionedThroughput(index.getProvisionedThroughput()),
+                    new AttributeDefinition(index.getKeySchema().get(0).getAttributeName(), ScalarAttributeType.S),
+                    new AttributeDefinition(RewardTable.TS, ScalarAttributeType.N)
             ).waitForActive();
         }
+    }
 
+    private void checkAndCreateUserTable() throws InterruptedException {
         try {
             dynamodb.getTable(userTableName).describe();
         } catch (ResourceNotFoundException rnfe) {
@@ -81,12 +337,197 @@ public class DynamodbAdapter {
                             new KeySchemaElement(UserTable.USERNAME, KeyType.HASH)
                     ).withAttributeDefinitions(
                             new AttributeDefinition(UserTable.USERNAME, ScalarAttributeType.S)
-                    ).withProvisionedThroughput(new ProvisionedThroughput(100L, 100L))
+                    ).withProvisionedThroughput(provisionedThroughput())
+            ).waitForActive();
+        }
+    }
+
+    private boolean checkAndCreateLeaderboardTable() throws InterruptedException {
+        try {
+            dynamodb.getTable(leaderboardTableName).describe();
+            return false;
+        } catch (ResourceNotFoundException rnfe) {
+            dynamodb.createTable(new CreateTableRequest()
+                    .withTableName(leaderboardTableName)
+                    .withKeySchema(
+                            new KeySchemaElement(LeaderboardTable.PERIOD, KeyType.HASH),
+                            new KeySchemaElement(LeaderboardTable.USERNAME, KeyType.RANGE)
+                    ).withAttributeDefinitions(
+                            new AttributeDefinition(LeaderboardTable.PERIOD, ScalarAttributeType.S),
+                            new AttributeDefinition(LeaderboardTable.USERNAME, ScalarAttributeType.S),
+                            new AttributeDefinition(LeaderboardTable.SCORE, ScalarAttributeType.N)
+                    ).withLocalSecondaryIndexes(new LocalSecondaryIndex()
+                            .withIndexName(LeaderboardTable.SCORE_INDEX)
+                            .withKeySchema(
+                                    new KeySchemaElement(LeaderboardTable.PERIOD, KeyType.HASH),
+                                    new KeySchemaElement(LeaderboardTable.SCORE, KeyType.RANGE))
+                            .withProjection(new Projection().withProjectionType(ProjectionType.ALL))
+                    ).withProvisionedThroughput(provisionedThroughput())
+            ).waitForActive();
+            return true;
+        }
+    }
+
+    private boolean checkAndCreateCoinsTable() throws InterruptedException {
+        try {
+            dynamodb.getTable(coinsTableName).describe();
+            return false;
+        } catch (ResourceNotFoundException rnfe) {
+            dynamodb.createTable(new CreateTableRequest()
+                    .withTableName(coinsTableName)
+                    .withKeySchema(
+                            new KeySchemaElement(CoinsTable.GIVER, KeyType.HASH),
+                            new KeySchemaElement(CoinsTable.RECEIVER, KeyType.RANGE)
+                    ).withAttributeDefinitions(
+                            new AttributeDefinition(CoinsTable.GIVER, ScalarAttributeType.S),
+                            new AttributeDefinition(CoinsTable.RECEIVER, ScalarAttributeType.S)
+                    ).withProvisionedThroughput(provisionedThroughput())
+            ).waitForActive();
+            return true;
+        }
+    }
+
+    private void checkAndCreateSummaryTable() throws InterruptedException {
+        try {
+            dynamodb.getTable(summaryTableName).describe();
+        } catch (ResourceNotFoundException rnfe) {
+            dynamodb.createTable(new CreateTableRequest()
+                    .withTableName(summaryTableName)
+                    .withKeySchema(
+                            new KeySchemaElement(SummaryTable.MONTH, KeyType.HASH),
+                            new KeySchemaElement(SummaryTable.ENTRY, KeyType.RANGE)
+                    ).withAttributeDefinitions(
+                            new AttributeDefinition(SummaryTable.MONTH, ScalarAttributeType.S),
+                            new AttributeDefinition(SummaryTable.ENTRY, ScalarAttributeType.S)
+                    ).withProvisionedThroughput(provisionedThroughput())
             ).waitForActive();
         }
     }
 
+    // DynamoDB deletes expired rewards in the background without consuming write capacity
+    private void enableRewardExpiry() {
+        val description = amazonDynamoDB.describeTimeToLive(new DescribeTimeToLiveRequest().withTableName(rewardTableName))
+                .getTimeToLiveDescription();
+        if (TimeToLiveStatus.DISABLED.toString().equals(description.getTimeToLiveStatus())) {
+            log.info("Enabling expiry of {} on {}", RewardTable.EXPIRES_AT, rewardTableName);
+            amazonDynamoDB.updateTimeToLive(new UpdateTimeToLiveRequest()
+                    .withTableName(rewardTableName)
+                    .withTimeToLiveSpecification(new TimeToLiveSpecification()
+                            .withAttributeName(RewardTable.EXPIRES_AT)
+                            .withEnabled(true)));
+        }
+    }
+
+    // moves rewardsFor:* attributes of user items into the coins table, each chunk is removed only if still unchanged
+    public int migrateLegacyCoins() {
+        return metrics.time("migrateLegacyCoins", this::moveLegacyCoins);
+    }
+
+    private int moveLegacyCoins() {
+        ItemCollection<ScanOutcome> pages = dynamodb.getTable(userTableName).scan(new ScanSpec()
+                .withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL));
+
+        int migrated = 0;
+        for (Item user : pages) {
+            val legacy = legacyCoins(user);
+            val receivers = new ArrayList<String>(legacy.keySet());
+
+            for (int i = 0; i < receivers.size(); i += MAX_LEGACY_COUNTERS_PER_MIGRATION) {
+                val chunk = receivers.subList(i, Math.min(i + MAX_LEGACY_COUNTERS_PER_MIGRATION, receivers.size()));
+                try {
+                    amazonDynamoDB.transactWriteItems(new TransactWriteItemsRequest()
+                            .withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                            .withTransactItems(migrationItems(user.getString(UserTable.USERNAME), chunk, legacy)));
+                    migrated += chunk.size();
+                } catch (TransactionCanceledException e) {
+                    log.info("Coins of {} changed during migration", user.getString(UserTable.USERNAME));
+                } catch (AmazonDynamoDBException e) {
+                    // reads still merge the legacy counters, the next check tries again
+                    log.error("Migrating coins of {} failed", user.getString(UserTable.USERNAME), e);
+                }
+            }
+        }
+
+        cache.invalidate();
+        log.info("Migrated {} legacy coin counters. Consumed Capacity: {}", migrated, consumedCapacityUnits(pages));
+
+        return migrated;
+    }
+
+    private List<TransactWriteItem> migrationItems(String giver, List<String> receivers, Map<String, Integer> legacy) {
+        val writeItems = new ArrayList<TransactWriteItem>();
+        val removal = new ExpressionSpecBuilder();
+        Condition unchanged = null;
+
+        for (String receiver : receivers) {
+            String attribute = UserTable.REWARDS_FOR_PREFIX + receiver;
+            Condition counterUnchanged = N(attribute).eq(legacy.get(receiver));
+            unchanged = unchanged == null ? counterUnchanged : unchanged.and(counterUnchanged);
+            removal.addUpdate(N(attribute).remove());
+
+            writeItems.add(update(coinsTableName, coinsKey(giver, receiver),
+                    new ExpressionSpecBuilder().addUpdate(N(CoinsTable.AMOUNT).add(legacy.get(receiver)))));
+        }
+
+        UpdateItemExpressionSpec updateSpec = removal.withCondition(unchanged).buildForUpdate();
+        writeItems.add(new TransactWriteItem().withUpdate(new Update()
+                .withTableName(userTableName)
+                .withKey(Collections.singletonMap(UserTable.USERNAME, new AttributeValue(giver)))
+                .withUpdateExpression(updateSpec.getUpdateExpression())
+                .withConditionExpression(updateSpec.getConditionExpression())
+                .withExpressionAttributeNames(updateSpec.getNameMap())
+                .withExpressionAttributeValues(ItemUtils.fromSimpleMap(updateSpec.getValueMap()))));
+
+        return writeItems;
+    }
+
+    // the all time board of an existing deployment starts from the user totals, monthly boards fill up from now on
+    private void seedLeaderboard() {
+        val scores = loadUsers(false).stream()
+                .filter(user -> user.getRewards() != 0)
+                .map(user -> leaderboardKey(ALL_TIME, user.getUsername())
+                        .withNumber(LeaderboardTable.SCORE, user.getRewards()))
+                .collect(toList());
+
+        for (int i = 0; i < scores.size(); i += MAX_BATCH_WRITE_ITEMS) {
+            writeBatch(leaderboardTableName, scores.subList(i, Math.min(i + MAX_BATCH_WRITE_ITEMS, scores.size())));
+        }
+        log.info("Seeded leaderboard with {} users", scores.size());
+    }
+
+    static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    static <T> T await(Future<T> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof InterruptedException) {
+                throw (InterruptedException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
     public void deleteTables() throws InterruptedException {
+        metrics.time("deleteTables", () -> {
+            dropTables();
+            return null;
+        });
+    }
+
+    private void dropTables() throws InterruptedException {
         Table rewardTable = dynamodb.getTable(rewardTableName);
         rewardTable.delete();
         rewardTable.waitForDelete();
@@ -94,97 +535,1000 @@ public class DynamodbAdapter {
         Table userTable = dynamodb.getTable(userTableName);
         userTable.delete();
         userTable.waitForDelete();
+
+        Table leaderboardTable = dynamodb.getTable(leaderboardTableName);
+        leaderboardTable.delete();
+        leaderboardTable.waitForDelete();
+
+        Table coinsTable = dynamodb.getTable(coinsTableName);
+        coinsTable.delete();
+        coinsTable.waitForDelete();
+
+        Table summaryTable = dynamodb.getTable(summaryTableName);
+        summaryTable.delete();
+        summaryTable.waitForDelete();
     }
 
+    @Override
     public void rewardUser(Reward reward) {
-        saveRewardToStream(reward);
-        saveThatUserGaveAReward(reward);
-        saveThatUserReceivedAReward(reward);
+        metrics.time("rewardUser", () -> {
+            writeReward(reward);
+            return null;
+        });
     }
 
-    private void saveThatUserGaveAReward(Reward reward) {
-        Table userTable = dynamodb.getTable(userTableName);
+    private void writeReward(Reward reward) {
+        val result = transactRewards(Collections.singletonList(reward));
 
-        UpdateItemExpressionSpec countRewardsToUsers = new ExpressionSpecBuilder()
-                .addUpdate(
-                        N(UserTable.REWARDS_FOR_PREFIX + reward.getRewardedUser()).add(reward.getAmount()))
-                .buildForUpdate();
+        cache.invalidate();
+        applyAggregates(Collections.singletonList(reward));
+        bumpVersion();
 
-        userTable.updateItem(new UpdateItemSpec()
-                .withPrimaryKey(UserTable.USERNAME, reward.getGivenByUsername())
-                .withExpressionSpec(countRewardsToUsers));
+        log.info("Reward stored. Consumed Capacity: {}", result.getConsumedCapacity());
     }
 
-    private void saveThatUserReceivedAReward(Reward reward) {
-        Table userTable = dynamodb.getTable(userTableName);
+    // only the rewards and their receivers' counter shards, items no other writer needs at the same moment. A conflict
+    // is retried on freshly picked shards, a reward whose key is taken moves on to the next free millisecond.
+    private TransactWriteItemsResult transactRewards(List<Reward> rewards) {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return amazonDynamoDB.transactWriteItems(new TransactWriteItemsRequest()
+                        .withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                        .withTransactItems(rewardWriteItems(rewards)));
+            } catch (TransactionCanceledException e) {
+                if (attempt + 1 >= MAX_TRANSACTION_ATTEMPTS) {
+                    throw e;
+                }
+                if (moveCollidedRewards(rewards, e.getCancellationReasons())) {
+                    log.info("Reward key taken, retrying on the next millisecond");
+                } else if (isConflict(e)) {
+                    log.info("Reward transaction conflicted, retrying");
+                    Backoff.sleep(attempt);
+                } else {
+                    throw e;
+                }
+            }
+        }
+    }
 
-        UpdateItemExpressionSpec rewardUserSpec = new ExpressionSpecBuilder()
-                .addUpdate(
-                        N(UserTable.REWARDS).add(reward.getAmount()))
-                .buildForUpdate();
+    private static boolean isConflict(TransactionCanceledException e) {
+        return e.getCancellationReasons() != null && e.getCancellationReasons().stream()
+                .anyMatch(reason -> TRANSACTION_CONFLICT.equals(reason.getCode()));
+    }
 
-        userTable.updateItem(new UpdateItemSpec()
-                .withPrimaryKey(UserTable.USERNAME, reward.getRewardedUser())
-                .withExpressionSpec(rewardUserSpec));
+    // the puts lead the transaction, so the first reasons line up with the rewards
+    private static boolean moveCollidedRewards(List<Reward> rewards, List<CancellationReason> reasons) {
+        boolean moved = false;
+        for (int i = 0; reasons != null && i < Math.min(rewards.size(), reasons.size()); i++) {
+            if (CONDITIONAL_CHECK_FAILED.equals(reasons.get(i).getCode())) {
+                Reward reward = rewards.get(i);
+                do {
+                    reward.setTs(reward.getTs() + 1);
+                } while (sharesTs(reward, rewards));
+                moved = true;
+            }
+        }
+        return moved;
+    }
+
+    private static boolean sharesTs(Reward reward, List<Reward> rewards) {
+        return rewards.stream().anyMatch(other -> other != reward && other.getTs().equals(reward.getTs()));
+    }
+
+    // puts first, then one counter shard per receiver with the rewards' amounts summed up and a version marker. A put never overwrites,
+    // the same day shard and millisecond may already hold a reward from another request.
+    private List<TransactWriteItem> rewardWriteItems(List<Reward> rewards) {
+        PutItemExpressionSpec freeKey = new ExpressionSpecBuilder()
+                .withCondition(N(RewardTable.TS).notExists())
+                .buildForPut();
+
+        val writeItems = new ArrayList<TransactWriteItem>();
+        rewards.forEach(reward -> writeItems.add(new TransactWriteItem().withPut(new Put()
+                .withTableName(rewardTableName)
+                .withItem(ItemUtils.toAttributeValues(rewardToItem(reward)))
+                .withConditionExpression(freeKey.getConditionExpression())
+                .withExpressionAttributeNames(freeKey.getNameMap()))));
+
+        coalesceReceivedDeltas(rewards).forEach((receiver, amount) -> {
+            String counter = counterItemKey(receiver);
+            ExpressionSpecBuilder counterUpdates = new ExpressionSpecBuilder()
+                    .addUpdate(N(UserTable.REWARDS).add(amount));
+            if (!counter.equals(receiver)) {
+                counterUpdates.addUpdate(S(UserTable.COUNTER_OF).set(receiver));
+            }
+            writeItems.add(userUpdate(counter, counterUpdates));
+        });
+        writeItems.add(versionUpdate());
+
+        return writeItems;
+    }
+
+    // givers, coins and leaderboards are shared by everyone rewarding the same user, inside the transaction they
+    // would cancel each other. They follow right after it, and the rewards are stored by then: a delta that cannot be
+    // added is kept as pending instead of failing the request, which would only have the client send the rewards again.
+    private void applyAggregates(List<Reward> rewards) {
+        List<CompletableFuture<Void>> updates = new ArrayList<>();
+
+        // givers are listed as users too
+        rewards.stream().map(Reward::getGivenByUsername).distinct().forEach(giver -> updates.add(CompletableFuture.runAsync(() ->
+                applyDelta(userTableName, new Item().withString(UserTable.USERNAME, giver), UserTable.REWARDS, 0),
+                executor)));
+
+        coalesceCoinsDeltas(rewards).forEach((key, delta) -> updates.add(CompletableFuture.runAsync(() ->
+                applyDelta(coinsTableName, key, CoinsTable.AMOUNT, delta), executor)));
+
+        coalesceLeaderboardDeltas(rewards).forEach((key, delta) -> updates.add(CompletableFuture.runAsync(() ->
+                applyDelta(leaderboardTableName, key, LeaderboardTable.SCORE, delta), executor)));
+
+        join(CompletableFuture.allOf(updates.toArray(new CompletableFuture[0])));
+    }
+
+    // failures show up as errors of applyDelta, the pending delta is added by the next reapplyPendingDeltas run
+    private void applyDelta(String tableName, Item key, String attribute, int delta) {
+        try {
+            metrics.time("applyDelta", () -> {
+                addToCounter(tableName, key, attribute, delta);
+                return null;
+            });
+        } catch (RuntimeException e) {
+            log.warn("Adding {} to {} of {} in {} failed, keeping it as pending", delta, attribute, key, tableName, e);
+            recordPendingDelta(tableName, key, attribute, delta);
+        }
+    }
+
+    private void recordPendingDelta(String tableName, Item key, String attribute, int delta) {
+        try {
+            dynamodb.getTable(leaderboardTableName).putItem(new PutItemSpec()
+                    .withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                    .withItem(new Item()
+                            .withString(LeaderboardTable.PERIOD, PendingDelta.PERIOD)
+                            .withString(LeaderboardTable.USERNAME, UUID.randomUUID().toString())
+                            .withString(PendingDelta.TABLE, tableName)
+                            .withMap(PendingDelta.KEY, key.asMap())
+                            .withString(PendingDelta.ATTRIBUTE, attribute)
+                            .withInt(PendingDelta.DELTA, delta)));
+        } catch (RuntimeException e) {
+            log.error("Lost {} to {} of {} in {}, it has to be added by hand", delta, attribute, key, tableName, e);
+        }
+    }
+
+    // adds every pending delta and deletes it in the same transaction, so a delta is never added twice
+    @Override
+    public int reapplyPendingDeltas() {
+        return metrics.time("reapplyPendingDeltas", this::addPendingDeltas);
+    }
+
+    private int addPendingDeltas() {
+        ItemCollection<QueryOutcome> pending = dynamodb.getTable(leaderboardTableName).query(new QuerySpec()
+                .withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                .withConsistentRead(true)
+                .withHashKey(LeaderboardTable.PERIOD, PendingDelta.PERIOD));
+
+        int reapplied = 0;
+        for (Item item : pending) {
+            try {
+                amazonDynamoDB.transactWriteItems(new TransactWriteItemsRequest()
+                        .withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                        .withTransactItems(pendingDeltaItems(item)));
+                reapplied++;
+            } catch (TransactionCanceledException e) {
+                log.info("Pending delta {} changed while reapplying it", item.getString(LeaderboardTable.USERNAME));
+            }
+        }
+
+        if (reapplied > 0) {
+            cache.invalidate();
+        }
+        log.info("Reapplied {} pending deltas. Consumed Capacity: {}", reapplied, consumedCapacityUnits(pending));
+
+        return reapplied;
+    }
+
+    private List<TransactWriteItem> pendingDeltaItems(Item item) {
+        val condition = new ExpressionSpecBuilder()
+                .withCondition(S(LeaderboardTable.PERIOD).exists())
+                .buildForDeleteItem();
+
+        return Arrays.asList(
+                update(item.getString(PendingDelta.TABLE), Item.fromMap(item.getMap(PendingDelta.KEY)),
+                        new ExpressionSpecBuilder().addUpdate(N(item.getString(PendingDelta.ATTRIBUTE))
+                                .add(item.getInt(PendingDelta.DELTA)))),
+                new TransactWriteItem().withDelete(new Delete()
+                        .withTableName(leaderboardTableName)
+                        .withKey(ItemUtils.toAttributeValues(leaderboardKey(PendingDelta.PERIOD,
+                                item.getString(LeaderboardTable.USERNAME))))
+                        .withConditionExpression(condition.getConditionExpression())
+                        .withExpressionAttributeNames(condition.getNameMap())),
+                versionUpdate());
+    }
+
+    // the transaction already counted the version up, once more after the aggregates: a reader that loaded users in
+    // between would otherwise keep them under the new version
+    private void bumpVersion() {
+        applyDelta(leaderboardTableName, versionMarkerKey(), VersionMarker.VERSION, 1);
+    }
+
+    private TransactWriteItem versionUpdate() {
+        return update(leaderboardTableName, versionMarkerKey(), new ExpressionSpecBuilder()
+                .addUpdate(N(VersionMarker.VERSION).add(1)));
+    }
+
+    private static Item versionMarkerKey() {
+        int shard = ThreadLocalRandom.current().nextInt(VersionMarker.SHARDS);
+        return leaderboardKey(VersionMarker.PERIOD, VersionMarker.USERNAME + SHARD_SEPARATOR + shard);
+    }
+
+    // a consistent query of a few small items, so a 304 never vouches for content older than the last finished write
+    @Override
+    public long retrieveVersion() {
+        return metrics.time("retrieveVersion", () -> {
+            ItemCollection<QueryOutcome> markers = dynamodb.getTable(leaderboardTableName).query(new QuerySpec()
+                    .withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                    .withConsistentRead(true)
+                    .withHashKey(LeaderboardTable.PERIOD, VersionMarker.PERIOD));
+
+            long version = 0;
+            for (Item marker : markers) {
+                version += marker.getLong(VersionMarker.VERSION);
+            }
+
+            if (version != cachedVersion) {
+                cache.invalidate();
+                cachedVersion = version;
+            }
+            return version;
+        });
     }
 
-    private void saveRewardToStream(Reward reward) {
-        Table rewards = dynamodb.getTable(rewardTableName);
-        String id = LocalDate.now(ZoneOffset.UTC).toString();
+    // shard 0 is the user item itself, so a single shard keeps the original layout
+    private String counterItemKey(String username) {
+        int shard = ThreadLocalRandom.current().nextInt(settings.getUserCounterShards());
+        return shard == 0 ? username : username + SHARD_SEPARATOR + shard;
+    }
+
+    private List<String> counterItemKeys(String username) {
+        return IntStream.range(0, settings.getUserCounterShards())
+                .mapToObj(shard -> shard == 0 ? username : username + SHARD_SEPARATOR + shard)
+                .collect(toList());
+    }
+
+    private static List<String> leaderboardPeriods(Reward reward) {
+        return Arrays.asList(ALL_TIME, YearMonth.from(Instant.ofEpochMilli(reward.getTs()).atZone(ZoneOffset.UTC)).toString());
+    }
+
+    private static Item coinsKey(String giver, String receiver) {
+        return new Item()
+                .withString(CoinsTable.GIVER, giver)
+                .withString(CoinsTable.RECEIVER, receiver);
+    }
+
+    private static Item leaderboardKey(String period, String username) {
+        return new Item()
+                .withString(LeaderboardTable.PERIOD, period)
+                .withString(LeaderboardTable.USERNAME, username);
+    }
+
+    private TransactWriteItem userUpdate(String username, ExpressionSpecBuilder updates) {
+        return update(userTableName, new Item().withString(UserTable.USERNAME, username), updates);
+    }
+
+    private static TransactWriteItem update(String tableName, Item key, ExpressionSpecBuilder updates) {
+        UpdateItemExpressionSpec updateSpec = updates.buildForUpdate();
+
+        return new TransactWriteItem().withUpdate(new Update()
+                .withTableName(tableName)
+                .withKey(ItemUtils.toAttributeValues(key))
+                .withUpdateExpression(updateSpec.getUpdateExpression())
+                .withExpressionAttributeNames(updateSpec.getNameMap())
+                .withExpressionAttributeValues(ItemUtils.fromSimpleMap(updateSpec.getValueMap())));
+    }
 
-        rewards.putItem(new PutItemSpec().withItem(new Item()
+    private Item rewardToItem(Reward reward) {
+        String id = writePartitionKey(LocalDate.now(ZoneOffset.UTC));
+
+        Item item = new Item()
                 .withString(RewardTable.ID, id)
                 .withNumber(RewardTable.TS, reward.getTs())
                 .withNumber(RewardTable.AMOUNT, reward.getAmount())
                 .withString(RewardTable.FROM_USER, reward.getGivenByUsername())
                 .withString(RewardTable.TO_USER, reward.getRewardedUser())
-                .withString(RewardTable.DESCRIPTION, reward.getDescription())));
+                .withString(RewardTable.DESCRIPTION, reward.getDescription());
+        // counted from when it is stored, like the partition, so the day is compacted well before it expires
+        if (settings.getRewardTtlDays() > 0) {
+            item.withNumber(RewardTable.EXPIRES_AT,
+                    Instant.now().plus(Duration.ofDays(settings.getRewardTtlDays())).getEpochSecond());
+        }
+        return item;
     }
 
 
-    public List<Reward> retrieveRewardsSince(Long epochMillis) {
+    // shard 0 keeps the plain day as key, so raising the shard count leaves existing rewards readable
+    private static String partitionKey(LocalDate day, int shard) {
+        return shard == 0 ? day.toString() : day + SHARD_SEPARATOR + shard;
+    }
+
+    private String writePartitionKey(LocalDate day) {
+        return partitionKey(day, ThreadLocalRandom.current().nextInt(settings.getRewardWriteShards()));
+    }
+
+    private List<String> readPartitionKeys(LocalDate day) {
+        return IntStream.range(0, settings.getRewardWriteShards())
+                .mapToObj(shard -> partitionKey(day, shard))
+                .collect(toList());
+    }
+
+    @Override
+    public void rewardUsers(List<Reward> rewards) {
+        metrics.time("rewardUsers", () -> {
+            writeRewards(rewards);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> rewardUserAsync(Reward reward) {
+        return CompletableFuture.runAsync(() -> rewardUser(reward), executor);
+    }
+
+    // one conditional put per reward, a window at a time, then each counter once with the deltas of the whole batch.
+    // Transactions would cost twice the capacity and conflict on the receivers' counters. Whatever was stored is
+    // counted even when a later put fails, the error tells the client how much of the batch is in.
+    private void writeRewards(List<Reward> rewards) {
+        List<Reward> stored = new ArrayList<>(rewards.size());
+        try {
+            for (int i = 0; i < rewards.size(); i += MAX_REWARD_PUTS_IN_FLIGHT) {
+                putRewards(rewards.subList(i, Math.min(i + MAX_REWARD_PUTS_IN_FLIGHT, rewards.size())), stored);
+            }
+        } catch (RuntimeException e) {
+            throw new IllegalStateException("Stored " + stored.size() + " of " + rewards.size() + " rewards", e);
+        } finally {
+            cache.invalidate();
+            coalesceReceivedDeltas(stored).forEach((receiver, amount) ->
+                    applyDelta(userTableName, new Item().withString(UserTable.USERNAME, receiver), UserTable.REWARDS, amount));
+            applyAggregates(stored);
+            if (!stored.isEmpty()) {
+                bumpVersion();
+            }
+        }
+        log.info("Bulk stored {} rewards", rewards.size());
+    }
+
+    // the window's puts run side by side, every one of them is awaited before a failure is passed on
+    private void putRewards(List<Reward> window, List<Reward> stored) {
+        val puts = window.stream()
+                .map(reward -> CompletableFuture.runAsync(() -> putReward(reward), executor))
+                .collect(toList());
+
+        RuntimeException failure = null;
+        for (int i = 0; i < puts.size(); i++) {
+            try {
+                join(puts.get(i));
+                stored.add(window.get(i));
+            } catch (RuntimeException e) {
+                failure = failure == null ? e : failure;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    // like in a transaction, a reward whose key is taken moves on to the next free millisecond
+    private void putReward(Reward reward) {
+        PutItemExpressionSpec freeKey = new ExpressionSpecBuilder()
+                .withCondition(N(RewardTable.TS).notExists())
+                .buildForPut();
+
+        while (true) {
+            try {
+                dynamodb.getTable(rewardTableName).putItem(new PutItemSpec()
+                        .withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                        .withItem(rewardToItem(reward))
+                        .withExpressionSpec(freeKey));
+                return;
+            } catch (ConditionalCheckFailedException e) {
+                reward.setTs(reward.getTs() + 1);
+            }
+        }
+    }
+
+    private void writeBatch(String tableName, List<Item> items) {
+        BatchWriteItemOutcome outcome = dynamodb.batchWriteItem(new BatchWriteItemSpec()
+                .withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                .withTableWriteItems(new TableWriteItems(tableName).withItemsToPut(items)));
+
+        for (int attempt = 0; !outcome.getUnprocessedItems().isEmpty(); attempt++) {
+            Backoff.sleep(attempt);
+            outcome = new BatchWriteItemOutcome(amazonDynamoDB.batchWriteItem(new BatchWriteItemRequest()
+                    .withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                    .withRequestItems(outcome.getUnprocessedItems())));
+        }
+    }
+
+    // username -> summed amount received, one counter update per receiver
+    private static Map<String, Integer> coalesceReceivedDeltas(List<Reward> rewards) {
+        Map<String, Integer> deltas = new LinkedHashMap<>();
+        rewards.forEach(r -> deltas.merge(r.getRewardedUser(), r.getAmount(), Integer::sum));
+        return deltas;
+    }
+
+    // coins key -> summed amount given
+    private static Map<Item, Integer> coalesceCoinsDeltas(List<Reward> rewards) {
+        Map<Item, Integer> deltas = new HashMap<>();
+        rewards.forEach(r -> deltas.merge(coinsKey(r.getGivenByUsername(), r.getRewardedUser()), r.getAmount(), Integer::sum));
+        return deltas;
+    }
+
+    // leaderboard key -> summed amount received in that period
+    private static Map<Item, Integer> coalesceLeaderboardDeltas(List<Reward> rewards) {
+        Map<Item, Integer> deltas = new HashMap<>();
+        rewards.forEach(r -> leaderboardPeriods(r).forEach(period ->
+                deltas.merge(leaderboardKey(period, r.getRewardedUser()), r.getAmount(), Integer::sum)));
+        return deltas;
+    }
+
+    // a plain update still conflicts with a transaction holding the same item, e.g. a reward to the giver
+    private void addToCounter(String tableName, Item key, String attribute, int delta) {
+        PrimaryKey primaryKey = new PrimaryKey();
+        key.attributes().forEach(component -> primaryKey.addComponent(component.getKey(), component.getValue()));
+
+        for (int attempt = 0; ; attempt++) {
+            try {
+                dynamodb.getTable(tableName).updateItem(new UpdateItemSpec()
+                        .withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                        .withPrimaryKey(primaryKey)
+                        .withExpressionSpec(new ExpressionSpecBuilder()
+                                .addUpdate(N(attribute).add(delta))
+                                .buildForUpdate()));
+                return;
+            } catch (TransactionConflictException e) {
+                if (attempt + 1 >= MAX_TRANSACTION_ATTEMPTS) {
+                    throw e;
+                }
+                Backoff.sleep(attempt);
+            }
+        }
+    }
+
+    // moves counter shard totals onto the user items, a shard written to in the meantime is left for the next run
+    @Override
+    public int consolidateUserCounters() {
+        return metrics.time("consolidateUserCounters", this::mergeCounterShards);
+    }
+
+    private int mergeCounterShards() {
         ScanExpressionSpec scanSpec = new ExpressionSpecBuilder()
-                .withCondition(N(RewardTable.TS).ge(epochMillis))
+                .withCondition(S(UserTable.COUNTER_OF).exists())
                 .buildForScan();
 
-        Table rewardTable = dynamodb.getTable(rewardTableName);
-        ItemCollection<ScanOutcome> pages = rewardTable.scan(new ScanSpec()
+        ItemCollection<ScanOutcome> pages = dynamodb.getTable(userTableName).scan(new ScanSpec()
                 .withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
                 .withExpressionSpec(scanSpec));
 
-        List<Reward> rewards = StreamSupport.stream(pages.spliterator(), false)
-                .map(this::itemToReward).collect(toList());
+        int consolidated = 0;
+        for (Item shard : pages) {
+            try {
+                amazonDynamoDB.transactWriteItems(new TransactWriteItemsRequest()
+                        .withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                        .withTransactItems(consolidationItems(shard)));
+                consolidated++;
+            } catch (TransactionCanceledException e) {
+                log.info("Counter shard {} changed during consolidation", shard.getString(UserTable.USERNAME));
+            }
+        }
 
-        log.info("Rewards since {}. Consumed Capacity: {}", epochMillis, pages.getAccumulatedConsumedCapacity());
+        cache.invalidate();
+        log.info("Consolidated {} counter shards. Consumed Capacity: {}", consolidated, consumedCapacityUnits(pages));
+
+        return consolidated;
+    }
+
+    private List<TransactWriteItem> consolidationItems(Item shard) {
+        int amount = shard.getInt(UserTable.REWARDS);
+        val condition = new ExpressionSpecBuilder()
+                .withCondition(N(UserTable.REWARDS).eq(amount))
+                .buildForDeleteItem();
+
+        return Arrays.asList(
+                new TransactWriteItem().withDelete(new Delete()
+                        .withTableName(userTableName)
+                        .withKey(Collections.singletonMap(UserTable.USERNAME,
+                                new AttributeValue(shard.getString(UserTable.USERNAME))))
+                        .withConditionExpression(condition.getConditionExpression())
+                        .withExpressionAttributeNames(condition.getNameMap())
+                        .withExpressionAttributeValues(ItemUtils.fromSimpleMap(condition.getValueMap()))),
+                userUpdate(shard.getString(UserTable.COUNTER_OF), new ExpressionSpecBuilder()
+                        .addUpdate(N(UserTable.REWARDS).add(amount))));
+    }
+
+    @Override
+    public int compactFinishedDays() {
+        if (settings.getRewardTtlDays() > 0 && settings.getCompactionLookbackDays() >= settings.getRewardTtlDays()) {
+            log.warn("Rewards expire after {} days, days older than that are compacted without them",
+                    settings.getRewardTtlDays());
+        }
+
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        return metrics.time("compactFinishedDays", () ->
+                compactDaysUpTo(today.minusDays(settings.getCompactionLookbackDays()), lastFinishedDay()));
+    }
 
+    @Override
+    public int compactDays(LocalDate from, LocalDate to) {
+        checkSummaryRange(from, to);
+        LocalDate lastFinished = lastFinishedDay();
+        return metrics.time("compactDays", () -> compactDaysUpTo(from, to.isAfter(lastFinished) ? lastFinished : to));
+    }
+
+    private static LocalDate lastFinishedDay() {
+        return Instant.now().minus(COMPACTION_GRACE).atZone(ZoneOffset.UTC).toLocalDate().minusDays(1);
+    }
+
+    private int compactDaysUpTo(LocalDate from, LocalDate last) {
+        val compactions = Stream.iterate(last, day -> day.minusDays(1))
+                .limit(Math.max(0, ChronoUnit.DAYS.between(from, last) + 1))
+                .map(day -> CompletableFuture.supplyAsync(() -> isCompacted(day) ? 0 : compactDay(day), dayExecutor))
+                .collect(toList());
+        int compacted = compactions.stream().mapToInt(DynamodbAdapter::join).sum();
+
+        log.info("Compacted {} days from {} to {}", compacted, from, last);
+        return compacted;
+    }
+
+    private void checkSummaryRange(LocalDate from, LocalDate to) {
+        if (ChronoUnit.DAYS.between(from, to) + 1 > settings.getMaxSummaryDays()) {
+            throw new IllegalArgumentException("Range from " + from + " to " + to + " spans more than "
+                    + settings.getMaxSummaryDays() + " days");
+        }
+    }
+
+    private boolean isCompacted(LocalDate day) {
+        return dynamodb.getTable(summaryTableName).getItem(new GetItemSpec()
+                .withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                .withPrimaryKey(SummaryTable.MONTH, YearMonth.from(day).toString(), SummaryTable.ENTRY, day.toString())) != null;
+    }
+
+    // writes are plain puts, a day cut short by a failure is simply compacted again
+    private int compactDay(LocalDate day) {
+        DailySummary summary = summarizeRewards(day);
+        String month = YearMonth.from(day).toString();
+
+        val totals = summary.getTotals().stream()
+                .map(total -> new Item()
+                        .withString(SummaryTable.MONTH, month)
+                        .withString(SummaryTable.ENTRY, day + SHARD_SEPARATOR + total.getGivenByUsername()
+                                + SHARD_SEPARATOR + total.getRewardedUser())
+                        .withString(SummaryTable.GIVER, total.getGivenByUsername())
+                        .withString(SummaryTable.RECEIVER, total.getRewardedUser())
+                        .withNumber(SummaryTable.COUNT, total.getCount())
+                        .withNumber(SummaryTable.AMOUNT, total.getAmount()))
+                .collect(toList());
+        for (int i = 0; i < totals.size(); i += MAX_BATCH_WRITE_ITEMS) {
+            writeBatch(summaryTableName, totals.subList(i, Math.min(i + MAX_BATCH_WRITE_ITEMS, totals.size())));
+        }
+
+        dynamodb.getTable(summaryTableName).putItem(new PutItemSpec()
+                .withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                .withItem(new Item()
+                        .withString(SummaryTable.MONTH, month)
+                        .withString(SummaryTable.ENTRY, day.toString())
+                        .withNumber(SummaryTable.COUNT, summary.getCount())
+                        .withNumber(SummaryTable.AMOUNT, summary.getAmount())));
+
+        log.info("Compacted {} rewards of {} into {} totals", summary.getCount(), day, totals.size());
+        return 1;
+    }
+
+    private DailySummary summarizeRewards(LocalDate day) {
+        val consumedCapacity = new DoubleAdder();
+        val partitions = readPartitionKeys(day).stream()
+                .map(partition -> CompletableFuture.supplyAsync(
+                        () -> queryRewardsSince(partition, 0L, consumedCapacity), executor))
+                .collect(toList());
+        List<Reward> rewards = partitions.stream()
+                .map(DynamodbAdapter::join)
+                .flatMap(List::stream)
+                .collect(toList());
+
+        log.info("Summed up {} rewards of {}. Consumed Capacity: {}", rewards.size(), day, consumedCapacity.sum());
+        return DailySummary.summarize(day.toString(), rewards);
+    }
+
+    @Override
+    public List<DailySummary> retrieveDailySummaries(LocalDate from, LocalDate to) {
+        checkSummaryRange(from, to);
+        return metrics.time("retrieveDailySummaries", () ->
+                cache.get("dailySummaries:" + from + ":" + to, () -> loadDailySummaries(from, to), DynamodbAdapter::copyOfSummaries));
+    }
+
+    // one query per month for the compacted days, only the days not compacted yet read their rewards
+    private List<DailySummary> loadDailySummaries(LocalDate from, LocalDate to) {
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        LocalDate last = to.isAfter(today) ? today : to;
+        if (last.isBefore(from)) {
+            return new ArrayList<>();
+        }
+
+        val consumedCapacity = new DoubleAdder();
+        val months = Stream.iterate(YearMonth.from(from), month -> month.plusMonths(1))
+                .limit(ChronoUnit.MONTHS.between(YearMonth.from(from), YearMonth.from(last)) + 1)
+                .map(month -> CompletableFuture.supplyAsync(
+                        () -> querySummaries(month, from, last, consumedCapacity), executor))
+                .collect(toList());
+        Map<String, List<Item>> entriesByDay = months.stream()
+                .map(DynamodbAdapter::join)
+                .flatMap(List::stream)
+                .collect(groupingBy(DynamodbAdapter::entryDay));
+
+        val summaries = Stream.iterate(from, day -> day.plusDays(1))
+                .limit(ChronoUnit.DAYS.between(from, last) + 1)
+                .map(day -> {
+                    List<Item> entries = entriesByDay.getOrDefault(day.toString(), Collections.emptyList());
+                    return isCompactedDay(entries, day)
+                            ? CompletableFuture.completedFuture(itemsToSummary(day, entries))
+                            : CompletableFuture.supplyAsync(() -> summarizeRewards(day), dayExecutor);
+                })
+                .collect(toList());
+        List<DailySummary> result = summaries.stream().map(DynamodbAdapter::join).collect(toList());
+
+        log.info("Daily summaries {} to {} from {} months. Consumed Capacity: {}", from, last, months.size(),
+                consumedCapacity.sum());
+        return result;
+    }
+
+    private List<Item> querySummaries(YearMonth month, LocalDate from, LocalDate last, DoubleAdder consumedCapacity) {
+        val querySpec = new ExpressionSpecBuilder()
+                .withKeyCondition(S(SummaryTable.MONTH).eq(month.toString())
+                        .and(S(SummaryTable.ENTRY).between(from.toString(), last + SummaryTable.END)))
+                .buildForQuery();
+
+        ItemCollection<QueryOutcome> pages = dynamodb.getTable(summaryTableName).query(new QuerySpec()
+                .withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                .withExpressionSpec(querySpec));
+        List<Item> entries = new ArrayList<>();
+        pages.forEach(entries::add);
+
+        consumedCapacity.add(consumedCapacityUnits(pages));
+        return entries;
+    }
+
+    private static String entryDay(Item item) {
+        String entry = item.getString(SummaryTable.ENTRY);
+        int separator = entry.indexOf(SHARD_SEPARATOR);
+        return separator < 0 ? entry : entry.substring(0, separator);
+    }
+
+    private static boolean isCompactedDay(List<Item> entries, LocalDate day) {
+        return entries.stream().anyMatch(item -> item.getString(SummaryTable.ENTRY).equals(day.toString()));
+    }
+
+    // entries come back ordered by day#giver#receiver, which is the order summarize hands out too
+    private static DailySummary itemsToSummary(LocalDate day, List<Item> entries) {
+        DailySummary summary = DailySummary.builder().day(day.toString()).totals(new ArrayList<>()).build();
+        for (Item entry : entries) {
+            if (entry.getString(SummaryTable.ENTRY).equals(day.toString())) {
+                summary.setCount(entry.getInt(SummaryTable.COUNT));
+                summary.setAmount(entry.getInt(SummaryTable.AMOUNT));
+            } else {
+                summary.getTotals().add(DailySummary.PairTotal.builder()
+                        .givenByUsername(entry.getString(SummaryTable.GIVER))
+                        .rewardedUser(entry.getString(SummaryTable.RECEIVER))
+                        .count(entry.getInt(SummaryTable.COUNT))
+                        .amount(entry.getInt(SummaryTable.AMOUNT))
+                        .build());
+            }
+        }
+        return summary;
+    }
+
+    @Override
+    public List<Reward> retrieveRewardsSince(Long epochMillis) {
+        return metrics.time("retrieveRewardsSince", () ->
+                cache.get("rewardsSince:" + epochMillis, () -> loadRewardsSince(epochMillis), DynamodbAdapter::copyOfRewards));
+    }
+
+    private List<Reward> loadRewardsSince(Long epochMillis) {
+        if (isFullHistory(epochMillis)) {
+            return scanRewardsSince(epochMillis);
+        }
+
+        // whole days on the bounded day pool, each one queries its shards in turn
+        val consumedCapacity = new DoubleAdder();
+        val days = Stream.iterate(LocalDate.now(ZoneOffset.UTC), day -> day.minusDays(1))
+                .limit(sinceDays(epochMillis))
+                .map(day -> CompletableFuture.supplyAsync(() -> readPartitionKeys(day).stream()
+                        .flatMap(partition -> queryRewardsSince(partition, epochMillis, consumedCapacity).stream())
+                        .collect(toList()), dayExecutor))
+                .collect(toList());
+
+        val rewards = days.stream()
+                .map(DynamodbAdapter::join)
+                .flatMap(List::stream)
+                .sorted(REWARD_ORDER)
+                .collect(toList());
+
+        log.info("Rewards since {} from {} days. Consumed Capacity: {}", epochMillis, days.size(), consumedCapacity.sum());
 
         return rewards;
     }
 
-    public List<Reward> retrieveRewardsLast(int count) {
+    // 0 or less asks for every reward there is, the one case worth a scan of the whole table
+    private static boolean isFullHistory(Long epochMillis) {
+        return epochMillis <= 0;
+    }
+
+    // days from today back to the one of epochMillis, each of them is a query per shard
+    private long sinceDays(Long epochMillis) {
+        LocalDate firstDay = Instant.ofEpochMilli(epochMillis).atZone(ZoneOffset.UTC).toLocalDate();
+        long days = Math.max(ChronoUnit.DAYS.between(firstDay, LocalDate.now(ZoneOffset.UTC)) + 1, 0);
+        if (days > settings.getMaxDayPartitionsPerQuery()) {
+            throw new IllegalArgumentException("Rewards since " + epochMillis + " span " + days + " days, at most "
+                    + settings.getMaxDayPartitionsPerQuery() + " are queried. Since 0 reads the full history");
+        }
+        return days;
+    }
+
+    // same order as retrieveRewardsSince, but pages are only fetched while the stream is consumed. The full history
+    // follows the scan in table order, as RewardStore allows, like the paged scan: sorting it would hold all of it.
+    @Override
+    public Stream<Reward> streamRewardsSince(Long epochMillis) {
+        return metrics.time("streamRewardsSince", () -> openRewardsSince(epochMillis));
+    }
+
+    private Stream<Reward> openRewardsSince(Long epochMillis) {
+        if (isFullHistory(epochMillis)) {
+            return StreamSupport.stream(rewardsSinceScan(epochMillis).spliterator(), false)
+                    .map(DynamodbAdapter::itemToReward);
+        }
+
+        Iterator<Reward> rewards = walkDays(LocalDate.now(ZoneOffset.UTC), sinceDays(epochMillis), epochMillis, null, 0, pages -> {
+        });
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(rewards, Spliterator.ORDERED), false);
+    }
+
+    @Override
+    public RewardPage retrieveRewardsSince(Long epochMillis, String cursor, int pageSize) {
+        return metrics.time("retrieveRewardsSincePage", () ->
+                cache.get("rewardsSince:" + epochMillis + ":" + cursor + ":" + pageSize,
+                        () -> loadRewardsSince(epochMillis, RewardCursor.decode(cursor), pageSize), DynamodbAdapter::copyOf));
+    }
+
+    private RewardPage loadRewardsSince(Long epochMillis, RewardCursor after, int pageSize) {
+        if (isFullHistory(epochMillis)) {
+            return scanRewardsSince(epochMillis, after, pageSize);
+        }
+
+        List<ItemCollection<QueryOutcome>> queries = Collections.synchronizedList(new ArrayList<>());
+        val page = page(walkDays(LocalDate.now(ZoneOffset.UTC), sinceDays(epochMillis), epochMillis, after, pageSize + 1,
+                queries::add), pageSize);
+
+        log.info("Rewards since {} page of {} from {} partitions. Consumed Capacity: {}", epochMillis,
+                page.getRewards().size(), queries.size(), consumedCapacityUnits(queries));
+
+        return page;
+    }
+
+    // days newest first, each day is only queried once the previous one is drained,
+    // the shards of a day are opened in parallel and merged
+    private Iterator<Reward> walkDays(LocalDate newest, long days, Long epochMillis, RewardCursor after,
+                                      int pageSize, Consumer<ItemCollection<QueryOutcome>> onOpened) {
+        Iterator<Iterator<Reward>> perDay = Stream.iterate(newest, day -> day.minusDays(1))
+                .limit(Math.max(days, 0))
+                .filter(day -> after == null || !day.isAfter(after.day()))
+                .map(day -> mergeShards(day, epochMillis, after, pageSize, onOpened))
+                .iterator();
+
+        return new ConcatIterator<>(perDay);
+    }
+
+    private Iterator<Reward> mergeShards(LocalDate day, Long epochMillis, RewardCursor after, int pageSize,
+                                         Consumer<ItemCollection<QueryOutcome>> onOpened) {
+        val shards = readPartitionKeys(day).stream()
+                .map(partition -> CompletableFuture.supplyAsync(() -> {
+                    ItemCollection<QueryOutcome> pages = rewardsQuery(partition, epochMillis, after, pageSize);
+                    onOpened.accept(pages);
+                    Iterator<Reward> rewards = StreamSupport.stream(pages.spliterator(), false)
+                            .map(DynamodbAdapter::itemToReward)
+                            .filter(reward -> after == null || after.precedes(reward))
+                            .iterator();
+                    rewards.hasNext();
+                    return rewards;
+                }, executor))
+                .collect(toList());
+
+        return new MergingIterator<>(shards.stream().map(DynamodbAdapter::join).collect(toList()), REWARD_ORDER);
+    }
+
+    private ItemCollection<QueryOutcome> rewardsSinceQuery(String partition, Long epochMillis) {
+        return rewardsQuery(partition, epochMillis, null, 0);
+    }
+
+    private ItemCollection<QueryOutcome> rewardsQuery(String partition, Long epochMillis, RewardCursor after,
+                                                      int pageSize) {
+        Condition range = epochMillis == null ? null : N(RewardTable.TS).ge(epochMillis);
+        if (after != null) {
+            range = epochMillis == null
+                    ? N(RewardTable.TS).le(after.getTs())
+                    : N(RewardTable.TS).between(epochMillis, after.getTs());
+        }
+
+        Condition partitionKey = S(RewardTable.ID).eq(partition);
         val querySpec = new ExpressionSpecBuilder()
-                .withKeyCondition(S(RewardTable.ID).eq(LocalDate.now(ZoneOffset.UTC).toString()))
+                .withKeyCondition(range == null ? partitionKey : partitionKey.and(range))
                 .buildForQuery();
 
-        Table rewardTable = dynamodb.getTable(rewardTableName);
-        ItemCollection<QueryOutcome> pages = rewardTable.query(new QuerySpec()
+        val spec = new QuerySpec()
                 .withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
                 .withExpressionSpec(querySpec)
-                .withScanIndexForward(false)
-                .withMaxPageSize(count)
-        );
+                .withScanIndexForward(false);
+
+        return dynamodb.getTable(rewardTableName).query(pageSize > 0 ? spec.withMaxPageSize(pageSize) : spec);
+    }
+
+    // takes one reward more than the page holds to know whether a cursor is needed
+    private static RewardPage page(Iterator<Reward> rewards, int pageSize) {
+        List<Reward> page = new ArrayList<>(pageSize);
+        while (page.size() < pageSize && rewards.hasNext()) {
+            page.add(rewards.next());
+        }
+
+        String cursor = rewards.hasNext() && !page.isEmpty()
+                ? RewardCursor.after(page.get(page.size() - 1)).encode()
+                : null;
+        return new RewardPage(page, cursor);
+    }
+
+    // cached values are handed out as copies, callers are free to modify users and rewards
+    private static RewardPage copyOf(RewardPage page) {
+        return new RewardPage(copyOfRewards(page.getRewards()), page.getCursor());
+    }
+
+    private static List<Reward> copyOfRewards(List<Reward> rewards) {
+        return rewards.stream()
+                .map(reward -> new Reward(reward.getId(), reward.getTs(), reward.getGivenByUsername(),
+                        reward.getRewardedUser(), reward.getDescription(), reward.getAmount()))
+                .collect(toList());
+    }
+
+    private static List<User> copyOfUsers(List<User> users) {
+        return users.stream()
+                .map(user -> new User(user.getUsername(), user.getRewards(),
+                        user.getCoinsGiven() == null ? null : new HashMap<>(user.getCoinsGiven())))
+                .collect(toList());
+    }
 
-        val rewards = StreamSupport.stream(pages.firstPage().spliterator(), false)
-                .map(this::itemToReward)
+    private static List<DailySummary> copyOfSummaries(List<DailySummary> summaries) {
+        return summaries.stream()
+                .map(summary -> new DailySummary(summary.getDay(), summary.getCount(), summary.getAmount(),
+                        summary.getTotals().stream()
+                                .map(total -> new DailySummary.PairTotal(total.getGivenByUsername(),
+                                        total.getRewardedUser(), total.getCount(), total.getAmount()))
+                                .collect(toList())))
                 .collect(toList());
+    }
 
-        log.info("Rewards count {}. Consumed Capacity: {}", count, pages.getAccumulatedConsumedCapacity());
+    private List<Reward> queryRewardsSince(String partition, Long epochMillis, DoubleAdder consumedCapacity) {
+        ItemCollection<QueryOutcome> pages = rewardsSinceQuery(partition, epochMillis);
 
+        List<Reward> rewards = StreamSupport.stream(pages.spliterator(), false)
+                .map(DynamodbAdapter::itemToReward)
+                .collect(toList());
 
+        consumedCapacity.add(consumedCapacityUnits(pages));
         return rewards;
     }
 
-    private Reward itemToReward(Item item) {
+    private ItemCollection<ScanOutcome> rewardsSinceScan(Long epochMillis) {
+        ScanExpressionSpec scanSpec = new ExpressionSpecBuilder()
+                .withCondition(N(RewardTable.TS).ge(epochMillis))
+                .buildForScan();
+
+        return dynamodb.getTable(rewardTableName).scan(new ScanSpec()
+                .withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                .withExpressionSpec(scanSpec));
+    }
+
+    private List<Reward> scanRewardsSince(Long epochMillis) {
+        ItemCollection<ScanOutcome> pages = rewardsSinceScan(epochMillis);
+
+        List<Reward> rewards = StreamSupport.stream(pages.spliterator(), false)
+                .map(DynamodbAdapter::itemToReward)
+                .sorted(REWARD_ORDER)
+                .collect(toList());
+
+        log.info("Rewards since {}. Consumed Capacity: {}", epochMillis, pages.getAccumulatedConsumedCapacity());
+
+
+        return rewards;
+    }
+
+    // the full history, pages follow table order and the cursor is the scan's exclusive start key
+    private RewardPage scanRewardsSince(Long epochMillis, RewardCursor after, int pageSize) {
+        ScanExpressionSpec scanSpec = new ExpressionSpecBuilder()
+                .withCondition(N(RewardTable.TS).ge(epochMillis))
+                .buildForScan();
+
+        val spec = new ScanSpec()
+                .withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                .withExpressionSpec(scanSpec)
+                .withMaxResultSize(pageSize + 1);
+        if (after != null) {
+            spec.withExclusiveStartKey(RewardTable.ID, after.getId(), RewardTable.TS, after.getTs());
+        }
+
+        ItemCollection<ScanOutcome> pages = dynamodb.getTable(rewardTableName).scan(spec);
+        val page = page(StreamSupport.stream(pages.spliterator(), false).map(DynamodbAdapter::itemToReward).iterator(), pageSize);
+
+        log.info("Rewards since {} scanned page of {}. Consumed Capacity: {}", epochMillis, page.getRewards().size(),
+                pages.getAccumulatedConsumedCapacity());
+
+        return page;
+    }
+
+    private static double consumedCapacityUnits(List<? extends ItemCollection<?>> queries) {
+        synchronized (queries) {
+            return queries.stream().mapToDouble(DynamodbAdapter::consumedCapacityUnits).sum();
+        }
+    }
+
+    private static double consumedCapacityUnits(ItemCollection<?> pages) {
+        ConsumedCapacity consumedCapacity = pages.getAccumulatedConsumedCapacity();
+        return consumedCapacity == null ? 0 : consumedCapacity.getCapacityUnits();
+    }
+
+    @Override
+    public RewardPage retrieveRewardsLast(int count, String cursor) {
+        return metrics.time("retrieveRewardsLast", () ->
+                cache.get("rewardsLast:" + count + ":" + cursor,
+                        () -> loadRewardsLast(count, RewardCursor.decode(cursor)), DynamodbAdapter::copyOf));
+    }
+
+    private RewardPage loadRewardsLast(int count, RewardCursor after) {
+        List<ItemCollection<QueryOutcome>> queries = Collections.synchronizedList(new ArrayList<>());
+        // walks back from today until the page is full, so the feed does not run dry after midnight
+        val page = page(walkDays(LocalDate.now(ZoneOffset.UTC), settings.getLatestLookbackDays(), null, after,
+                count + 1, queries::add), count);
+
+        log.info("Rewards count {} from {} partitions. Consumed Capacity: {}", count, queries.size(),
+                consumedCapacityUnits(queries));
+
+
+        return page;
+    }
+
+    @Override
+    public List<User> retrieveLeaderboard(String period, int limit) {
+        return metrics.time("retrieveLeaderboard", () ->
+                cache.get("leaderboard:" + period + ":" + limit, () -> loadLeaderboard(period, limit), DynamodbAdapter::copyOfUsers));
+    }
+
+    // one query against the score index, the top entries are a single small page
+    private List<User> loadLeaderboard(String period, int limit) {
+        val querySpec = new ExpressionSpecBuilder()
+                .withKeyCondition(S(LeaderboardTable.PERIOD).eq(period))
+                .buildForQuery();
+
+        ItemCollection<QueryOutcome> pages = dynamodb.getTable(leaderboardTableName)
+                .getIndex(LeaderboardTable.SCORE_INDEX)
+                .query(new QuerySpec()
+                        .withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                        .withExpressionSpec(querySpec)
+                        .withScanIndexForward(false)
+                        .withMaxResultSize(limit));
+
+        List<User> ranking = StreamSupport.stream(pages.spliterator(), false)
+                .map(item -> User.builder()
+                        .username(item.getString(LeaderboardTable.USERNAME))
+                        .rewards(item.getInt(LeaderboardTable.SCORE))
+                        .build())
+                .collect(toList());
+
+        log.info("Leaderboard {} top {}. Consumed Capacity: {}", period, limit, consumedCapacityUnits(pages));
+
+        return ranking;
+    }
+
+    static Reward itemToReward(Item item) {
         return Reward.builder()
                 .id(item.getString(RewardTable.ID))
                 .ts(item.getLong(RewardTable.TS))
@@ -195,63 +1539,279 @@ public class DynamodbAdapter {
                 .build();
     }
 
+    @Override
     public List<User> retrieveUsers(Collection<User> users) {
-        val userTableKeysAndAttributes = new TableKeysAndAttributes(userTableName);
-        users.forEach(u -> userTableKeysAndAttributes.addHashOnlyPrimaryKey(UserTable.USERNAME, u.getUsername()));
+        val key = users.stream().map(User::getUsername).distinct().sorted().collect(joining(",", "users:", ""));
+        return metrics.time("retrieveUsersByName", () -> cache.get(key, () -> loadUsers(users, true), DynamodbAdapter::copyOfUsers));
+    }
+
+    // username and totalRewards only, coinsGiven stays null
+    @Override
+    public List<User> retrieveUserSummaries(Collection<User> users) {
+        val key = users.stream().map(User::getUsername).distinct().sorted().collect(joining(",", "userSummaries:", ""));
+        return metrics.time("retrieveUserSummariesByName", () -> cache.get(key, () -> loadUsers(users, false), DynamodbAdapter::copyOfUsers));
+    }
+
+    private List<User> loadUsers(Collection<User> users, boolean withCoins) {
+        val usernames = users.stream().map(User::getUsername).distinct().collect(toList());
 
-        return dynamodb.batchGetItem(userTableKeysAndAttributes).getTableItems().get(userTableName).stream()
-                .map(this::itemToUser)
+        val coins = usernames.stream()
+                .filter(username -> withCoins)
+                .map(username -> CompletableFuture.supplyAsync(() -> queryCoinsGiven(username), executor))
                 .collect(toList());
+
+        val keys = usernames.stream()
+                .flatMap(username -> counterItemKeys(username).stream())
+                .collect(toList());
+        val consumedCapacity = new DoubleAdder();
+        val chunks = new ArrayList<CompletableFuture<List<Item>>>();
+        for (int i = 0; i < keys.size(); i += MAX_BATCH_GET_KEYS) {
+            val chunk = keys.subList(i, Math.min(i + MAX_BATCH_GET_KEYS, keys.size()));
+            chunks.add(CompletableFuture.supplyAsync(() -> batchGetUsers(chunk, withCoins, consumedCapacity), executor));
+        }
+
+        List<User> found = foldCounterShards(chunks.stream()
+                .map(DynamodbAdapter::join)
+                .flatMap(List::stream)
+                .collect(toList()));
+        log.info("Users {} of {} requested from {} batches. Consumed Capacity: {}", found.size(), usernames.size(),
+                chunks.size(), consumedCapacity.sum());
+
+        if (!withCoins) {
+            return summaries(found);
+        }
+
+        val usersByName = byName(found);
+        coins.stream()
+                .map(DynamodbAdapter::join)
+                .flatMap(List::stream)
+                .forEach(item -> addCoins(usersByName, item));
+
+        return found;
     }
 
-    private User itemToUser(Item i) {
+    // a batch may come back partially under throttling, the rest is retried with backoff
+    private List<Item> batchGetUsers(List<String> keys, boolean withCoins, DoubleAdder consumedCapacity) {
+        val request = new TableKeysAndAttributes(userTableName);
+        if (!withCoins) {
+            val projection = new ExpressionSpecBuilder().addProjections(SUMMARY_ATTRIBUTES).buildForScan();
+            request.withProjectionExpression(projection.getProjectionExpression())
+                    .withNameMap(projection.getNameMap());
+        }
+        keys.forEach(key -> request.addHashOnlyPrimaryKey(UserTable.USERNAME, key));
+
+        BatchGetItemOutcome outcome = dynamodb.batchGetItem(ReturnConsumedCapacity.TOTAL, request);
+        List<Item> items = new ArrayList<>();
+        for (int attempt = 0; ; attempt++) {
+            items.addAll(outcome.getTableItems().getOrDefault(userTableName, Collections.emptyList()));
+            Optional.ofNullable(outcome.getBatchGetItemResult().getConsumedCapacity())
+                    .ifPresent(capacities -> capacities.forEach(c -> consumedCapacity.add(c.getCapacityUnits())));
+
+            if (outcome.getUnprocessedKeys().isEmpty()) {
+                return items;
+            }
+            Backoff.sleep(attempt);
+            outcome = dynamodb.batchGetItemUnprocessed(ReturnConsumedCapacity.TOTAL, outcome.getUnprocessedKeys());
+        }
+    }
+
+    private List<Item> queryCoinsGiven(String giver) {
+        val querySpec = new ExpressionSpecBuilder()
+                .withKeyCondition(S(CoinsTable.GIVER).eq(giver))
+                .buildForQuery();
+
+        ItemCollection<QueryOutcome> pages = dynamodb.getTable(coinsTableName).query(new QuerySpec()
+                .withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                .withExpressionSpec(querySpec));
+
+        return StreamSupport.stream(pages.spliterator(), false).collect(toList());
+    }
+
+    // counter shard items are added onto their owner, an owner without an item of its own only received rewards
+    private List<User> foldCounterShards(List<Item> items) {
+        Map<String, User> users = new LinkedHashMap<>();
+        items.stream()
+                .filter(item -> !item.isPresent(UserTable.COUNTER_OF))
+                .map(DynamodbAdapter::itemToUser)
+                .forEach(user -> users.put(user.getUsername(), user));
+
+        items.stream()
+                .filter(item -> item.isPresent(UserTable.COUNTER_OF))
+                .forEach(item -> {
+                    User user = users.computeIfAbsent(item.getString(UserTable.COUNTER_OF), username -> User.builder()
+                            .username(username)
+                            .coinsGiven(new HashMap<>())
+                            .build());
+                    user.setRewards(user.getRewards() + item.getInt(UserTable.REWARDS));
+                });
+
+        return new ArrayList<>(users.values());
+    }
+
+    static User itemToUser(Item i) {
         return User.builder()
                 .username(i.getString(UserTable.USERNAME))
                 .rewards(i.isPresent(UserTable.REWARDS) ? i.getInt(UserTable.REWARDS) : 0)
-                .coinsGiven(
-                        i.asMap().keySet()
-                                .stream()
-                                .filter(key -> key.startsWith(UserTable.REWARDS_FOR_PREFIX))
-                                .collect(toMap(
-                                        k -> k.split(":")[1],
-                                        i::getInt
-                                ))
-                ).build();
+                .coinsGiven(legacyCoins(i))
+                .build();
+    }
+
+    // receiver -> amount of rewardsFor:* attributes that have not been migrated yet
+    private static Map<String, Integer> legacyCoins(Item i) {
+        Map<String, Integer> coins = new HashMap<>();
+        for (Map.Entry<String, Object> attribute : i.attributes()) {
+            if (attribute.getKey().startsWith(UserTable.REWARDS_FOR_PREFIX)) {
+                coins.put(attribute.getKey().substring(UserTable.REWARDS_FOR_PREFIX.length()),
+                        ((Number) attribute.getValue()).intValue());
+            }
+        }
+        return coins;
+    }
+
+    private static void addCoins(Map<String, User> usersByName, Item coins) {
+        User giver = usersByName.get(coins.getString(CoinsTable.GIVER));
+        if (giver != null) {
+            giver.getCoinsGiven().merge(coins.getString(CoinsTable.RECEIVER), coins.getInt(CoinsTable.AMOUNT), Integer::sum);
+        }
+    }
+
+    private static List<User> summaries(List<User> users) {
+        users.forEach(user -> user.setCoinsGiven(null));
+        return users;
+    }
+
+    private static Map<String, User> byName(List<User> users) {
+        return users.stream().collect(toMap(User::getUsername, user -> user));
     }
 
+    @Override
     public List<User> retrieveUsers() {
-        Table userTable = dynamodb.getTable(userTableName);
-        ItemCollection<ScanOutcome> pages = userTable.scan(new ScanSpec()
-                .withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL));
+        return metrics.time("retrieveUsers", () -> cache.get("users", () -> loadUsers(true), DynamodbAdapter::copyOfUsers));
+    }
+
+    // username and totalRewards only, the coins table is not read at all
+    @Override
+    public List<User> retrieveUserSummaries() {
+        return metrics.time("retrieveUserSummaries", () -> cache.get("userSummaries", () -> loadUsers(false), DynamodbAdapter::copyOfUsers));
+    }
+
+    @Override
+    public CompletableFuture<List<User>> retrieveUserSummariesAsync() {
+        return CompletableFuture.supplyAsync(this::retrieveUserSummaries, executor);
+    }
+
+    private List<User> loadUsers(boolean withCoins) {
+        int segments = userScanSegments();
+        val consumedCapacity = new DoubleAdder();
+        val projection = withCoins ? null : new ExpressionSpecBuilder().addProjections(SUMMARY_ATTRIBUTES).buildForScan();
 
-        List<User> users = StreamSupport.stream(pages.spliterator(), false)
-                .map(this::itemToUser)
+        val scans = IntStream.range(0, segments)
+                .mapToObj(segment -> CompletableFuture.supplyAsync(
+                        () -> scanSegment(userTableName, projection, segment, segments, consumedCapacity), executor))
                 .collect(toList());
 
-        log.info("Users count {}. Consumed Capacity: {}", users.size(), pages.getAccumulatedConsumedCapacity());
+        val coinScans = IntStream.range(0, withCoins ? segments : 0)
+                .mapToObj(segment -> CompletableFuture.supplyAsync(
+                        () -> scanSegment(coinsTableName, null, segment, segments, consumedCapacity), executor))
+                .collect(toList());
+
+        List<User> users = foldCounterShards(scans.stream()
+                .map(DynamodbAdapter::join)
+                .flatMap(List::stream)
+                .collect(toList()));
+        if (!withCoins) {
+            log.info("User summaries count {} from {} segments. Consumed Capacity: {}", users.size(), segments,
+                    consumedCapacity.sum());
+            return summaries(users);
+        }
+
+        val usersByName = byName(users);
+        coinScans.stream()
+                .map(DynamodbAdapter::join)
+                .flatMap(List::stream)
+                .forEach(item -> addCoins(usersByName, item));
+
+        log.info("Users count {} from {} segments. Consumed Capacity: {}", users.size(), segments, consumedCapacity.sum());
 
         return users;
     }
 
-    public List<Reward> retrieveRewardsContaining(User user) {
+    private List<Item> scanSegment(String tableName, ScanExpressionSpec projection, int segment, int totalSegments,
+                                   DoubleAdder consumedCapacity) {
+        ScanSpec scanSpec = new ScanSpec()
+                .withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL);
+        if (projection != null) {
+            scanSpec.withExpressionSpec(projection);
+        }
+        if (totalSegments > 1) {
+            scanSpec.withSegment(segment).withTotalSegments(totalSegments);
+        }
+
+        ItemCollection<ScanOutcome> pages = dynamodb.getTable(tableName).scan(scanSpec);
+
+        List<Item> items = StreamSupport.stream(pages.spliterator(), false).collect(toList());
+
+        consumedCapacity.add(consumedCapacityUnits(pages));
+        return items;
+    }
+
+    // one segment per scan page worth of data, the size reported by DescribeTable is refreshed about every six hours
+    private int userScanSegments() {
+        if (settings.getUserScanSegments() > 0) {
+            return settings.getUserScanSegments();
+        }
+
+        if (autoUserScanSegments == 0) {
+            Long tableSizeBytes = dynamodb.getTable(userTableName).describe().getTableSizeBytes();
+            long pages = tableSizeBytes == null ? 1 : tableSizeBytes / SCAN_PAGE_BYTES + 1;
+            autoUserScanSegments = (int) Math.min(pages, MAX_AUTO_SCAN_SEGMENTS);
+        }
+        return autoUserScanSegments;
+    }
+
+    @Override
+    public List<Reward> retrieveRewardsContaining(User user, int limit) {
+        val key = "rewardsContaining:" + limit + ":" + user.getUsername();
+        return metrics.time("retrieveRewardsContaining", () -> cache.get(key, () -> loadRewardsContaining(user, limit), DynamodbAdapter::copyOfRewards));
+    }
+
+    private List<Reward> loadRewardsContaining(User user, int limit) {
+        val consumedCapacity = new DoubleAdder();
+        val given = CompletableFuture.supplyAsync(() -> queryUserIndex(
+                RewardTable.FROM_USER_INDEX, RewardTable.FROM_USER, user.getUsername(), limit, consumedCapacity), executor);
+        val received = CompletableFuture.supplyAsync(() -> queryUserIndex(
+                RewardTable.TO_USER_INDEX, RewardTable.TO_USER, user.getUsername(), limit, consumedCapacity), executor);
+
+        // a reward to oneself shows up in both indexes
+        val rewards = Stream.concat(join(given).stream(), join(received).stream())
+                .collect(toMap(r -> r.getId() + "/" + r.getTs(), r -> r, (a, b) -> a))
+                .values().stream()
+                .sorted(REWARD_ORDER)
+                .limit(limit)
+                .collect(toList());
+
+        log.info("Rewards count {}. Consumed Capacity: {}", rewards.size(), consumedCapacity.sum());
+
+        return rewards;
+    }
+
+    private List<Reward> queryUserIndex(String indexName, String userAttribute, String username, int limit,
+                                        DoubleAdder consumedCapacity) {
         val querySpec = new ExpressionSpecBuilder()
-                .withKeyCondition(S(RewardTable.ID).eq(LocalDate.now(ZoneOffset.UTC).toString()))
+                .withKeyCondition(S(userAttribute).eq(username))
                 .buildForQuery();
 
-        val rewardTable = dynamodb.getTable(rewardTableName);
-        ItemCollection<QueryOutcome> pages = rewardTable.query(new QuerySpec()
+        ItemCollection<QueryOutcome> pages = dynamodb.getTable(rewardTableName).getIndex(indexName).query(new QuerySpec()
                 .withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
                 .withExpressionSpec(querySpec)
-        );
+                .withScanIndexForward(false)
+                .withMaxResultSize(limit));
 
-        val rewards = StreamSupport.stream(pages.spliterator(), false)
-                .map(this::itemToReward)
-                .filter(r -> r.getGivenByUsername().equals(user.getUsername()) || r.getRewardedUser().equals(user.getUsername()))
+        List<Reward> rewards = StreamSupport.stream(pages.spliterator(), false)
+                .map(DynamodbAdapter::itemToReward)
                 .collect(toList());
 
-        log.info("Rewards count {}. Consumed Capacity: {}", rewards, pages.getAccumulatedConsumedCapacity());
-
-        Collections.reverse(rewards);
+        consumedCapacity.add(consumedCapacityUnits(pages));
         return rewards;
     }
 
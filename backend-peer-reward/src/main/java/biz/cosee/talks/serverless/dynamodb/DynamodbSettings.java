@@ -0,0 +1,47 @@
+package biz.cosee.talks.serverless.dynamodb;
+
+import lombok.Data;
+
+@Data
+public class DynamodbSettings {
+
+    // 0 derives the segment count from the size of the users table
+    private int userScanSegments = 0;
+
+    // longest since window queried day by day, longer ones are rejected. Since 0 scans the full history instead
+    private int maxDayPartitionsPerQuery = 366;
+
+    // how many days the latest rewards feed walks back before giving up on filling the page
+    private int latestLookbackDays = 7;
+
+    // rewards of one day are spread over this many hash keys, it must never shrink once rewards were written
+    private int rewardWriteShards = 1;
+
+    // receivers' totalRewards is spread over this many items, read back summed and merged by consolidateUserCounters
+    private int userCounterShards = 1;
+
+    // finished days further back are taken as compacted already, raise it once to compact older history
+    private int compactionLookbackDays = 7;
+
+    // 0 keeps rewards forever, otherwise DynamoDB expires them this many days after they were stored and only their
+    // daily summary is left. Keep it well above compactionLookbackDays.
+    private int rewardTtlDays = 0;
+
+    // longest from/to range summarized or compacted in one call, longer ones are rejected
+    private int maxSummaryDays = 366;
+
+    // days summarized or compacted at the same time, each one runs a query per reward shard
+    private int dayFanOut = 8;
+
+    // provisioned for every table and index created here, and the budget requests are paced to
+    private long readCapacityUnits = 100;
+    private long writeCapacityUnits = 100;
+
+    // waits for capacity before sending instead of running into throttling, per container and table
+    private boolean paceToProvisionedCapacity = true;
+
+    // 0 disables the container local read cache
+    private long cacheTtlMillis = 0;
+    private int cacheMaxEntries = 256;
+
+}
@@ -0,0 +1,50 @@
+package biz.cosee.talks.serverless.dynamodb;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+// k-way merge of iterators that are each sorted by the given order, sources are only advanced on demand
+class MergingIterator<T> implements Iterator<T> {
+
+    private final PriorityQueue<Head<T>> heads;
+
+    MergingIterator(List<Iterator<T>> sources, Comparator<? super T> order) {
+        this.heads = new PriorityQueue<>(Math.max(sources.size(), 1), (a, b) -> order.compare(a.value, b.value));
+        sources.forEach(this::advance);
+    }
+
+    @Override
+    public boolean hasNext() {
+        return !heads.isEmpty();
+    }
+
+    @Override
+    public T next() {
+        Head<T> head = heads.poll();
+        if (head == null) {
+            throw new NoSuchElementException();
+        }
+
+        advance(head.source);
+        return head.value;
+    }
+
+    private void advance(Iterator<T> source) {
+        if (source.hasNext()) {
+            heads.add(new Head<>(source.next(), source));
+        }
+    }
+
+    private static class Head<T> {
+        private final T value;
+        private final Iterator<T> source;
+
+        private Head(T value, Iterator<T> source) {
+            this.value = value;
+            this.source = source;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package biz.cosee.talks.serverless.dynamodb;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+// size bounded LRU with a TTL, every write through this container bumps the version and drops all entries
+@Slf4j
+class ReadCache {
+
+    private static final int STATS_LOG_INTERVAL = 100;
+
+    private final long ttlMillis;
+    private final LongSupplier clock;
+    private final Map<String, Entry> entries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder lookups = new LongAdder();
+
+    private long version;
+
+    ReadCache(long ttlMillis, int maxEntries) {
+        this(ttlMillis, maxEntries, System::currentTimeMillis);
+    }
+
+    ReadCache(long ttlMillis, int maxEntries, LongSupplier clock) {
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                boolean evict = size() > maxEntries;
+                if (evict) {
+                    evictions.increment();
+                }
+                return evict;
+            }
+        };
+    }
+
+    boolean isEnabled() {
+        return ttlMillis > 0;
+    }
+
+    // only for immutable values, everything else goes through a copy
+    <T> T get(String key, Supplier<T> loader) {
+        return get(key, loader, UnaryOperator.identity());
+    }
+
+    // the cached value itself never leaves the cache, every caller gets its own copy of it
+    @SuppressWarnings("unchecked")
+    <T> T get(String key, Supplier<T> loader, UnaryOperator<T> copy) {
+        if (!isEnabled()) {
+            return loader.get();
+        }
+
+        lookups.increment();
+        if (lookups.sum() % STATS_LOG_INTERVAL == 0) {
+            log.info("Read cache {}", stats());
+        }
+
+        long loadedVersion;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.version == version && entry.expiresAt > clock.getAsLong()) {
+                hits.increment();
+                return copy.apply((T) entry.value);
+            }
+            loadedVersion = version;
+        }
+
+        // loaded outside the lock, so one slow query does not block lookups of other keys
+        misses.increment();
+        T value = loader.get();
+
+        synchronized (this) {
+            if (loadedVersion == version) {
+                entries.put(key, new Entry(value, clock.getAsLong() + ttlMillis, loadedVersion));
+            }
+        }
+        return copy.apply(value);
+    }
+
+    synchronized void invalidate() {
+        version++;
+        entries.clear();
+    }
+
+    synchronized CacheStats stats() {
+        return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), entries.size());
+    }
+
+    private static class Entry {
+        private final Object value;
+        private final long expiresAt;
+        private final long version;
+
+        private Entry(Object value, long expiresAt, long version) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+            this.version = version;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package biz.cosee.talks.serverless.dynamodb;
+
+import biz.cosee.talks.serverless.Reward;
+import com.amazonaws.util.json.Jackson;
+import lombok.Value;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// opaque continuation token, the primary key of the last reward handed out
+@Value
+public class RewardCursor {
+
+    private static final String ID = "id";
+    private static final String TS = "ts";
+
+    private String id;
+    private long ts;
+
+    public static RewardCursor after(Reward reward) {
+        return new RewardCursor(reward.getId(), reward.getTs());
+    }
+
+    public static RewardCursor decode(String token) {
+        if (token == null || token.isEmpty()) {
+            return null;
+        }
+
+        try {
+            String json = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            Map<?, ?> key = Jackson.fromJsonString(json, Map.class);
+            RewardCursor cursor = new RewardCursor((String) key.get(ID), ((Number) key.get(TS)).longValue());
+            // walking days starts from the cursor's, a missing or bad id must not get past here
+            cursor.day();
+            return cursor;
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + token, e);
+        }
+    }
+
+    public String encode() {
+        Map<String, Object> key = new LinkedHashMap<>();
+        key.put(ID, id);
+        key.put(TS, ts);
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(Jackson.toJsonString(key).getBytes(StandardCharsets.UTF_8));
+    }
+
+    // day of the partition the cursor points into, shard suffix stripped
+    LocalDate day() {
+        int separator = id.indexOf(DynamodbAdapter.SHARD_SEPARATOR);
+        return LocalDate.parse(separator < 0 ? id : id.substring(0, separator));
+    }
+
+    // rewards are handed out ts descending, ties across shards by partition key descending
+    public boolean precedes(Reward reward) {
+        return reward.getTs() < ts || (reward.getTs() == ts && reward.getId().compareTo(id) < 0);
+    }
+}
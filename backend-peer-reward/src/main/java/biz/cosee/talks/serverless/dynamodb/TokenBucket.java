@@ -0,0 +1,94 @@
+package biz.cosee.talks.serverless.dynamodb;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+// capacity units per second with AIMD on the rate: halved on throttling, regained linearly while DynamoDB keeps up.
+// A request's cost is only known from its response, so acquire reserves one unit and consume settles the rest,
+// the balance going negative makes the following requests wait.
+class TokenBucket {
+
+    private static final double RESERVED_UNITS = 1;
+    private static final double THROTTLED_RATE_FACTOR = 0.5;
+    private static final double MIN_RATE_SHARE = 0.1;
+    // share of the budget regained per second without throttling
+    private static final double RECOVERY_PER_SECOND = 0.05;
+
+    private double budget;
+    private final LongSupplier nanoClock;
+
+    private double rate;
+    private double balance;
+    private long refilledAt;
+
+    TokenBucket(double unitsPerSecond) {
+        this(unitsPerSecond, System::nanoTime);
+    }
+
+    TokenBucket(double unitsPerSecond, LongSupplier nanoClock) {
+        this.budget = unitsPerSecond;
+        this.nanoClock = nanoClock;
+        this.rate = unitsPerSecond;
+        // one second of burst, like a freshly provisioned table
+        this.balance = unitsPerSecond;
+        this.refilledAt = nanoClock.getAsLong();
+    }
+
+    void acquire() {
+        long wait = reserve();
+        if (wait <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for capacity", e);
+        }
+    }
+
+    // the reservation is taken right away, so waiting requests queue up behind each other instead of all waking at once
+    synchronized long reserve() {
+        refill();
+        long wait = balance >= 0 ? 0 : (long) Math.ceil(-balance / rate * TimeUnit.SECONDS.toNanos(1));
+        balance -= RESERVED_UNITS;
+        return wait;
+    }
+
+    synchronized void consume(double units) {
+        refill();
+        balance -= units - RESERVED_UNITS;
+    }
+
+    synchronized void throttled() {
+        refill();
+        rate = Math.max(budget * MIN_RATE_SHARE, rate * THROTTLED_RATE_FACTOR);
+        balance = Math.min(balance, 0);
+    }
+
+    // the provisioned capacity moved. A smaller budget caps the rate right away, a larger one is grown into.
+    synchronized void resize(double unitsPerSecond) {
+        refill();
+        budget = unitsPerSecond;
+        rate = Math.min(rate, budget);
+        balance = Math.min(balance, rate);
+    }
+
+    synchronized double budget() {
+        return budget;
+    }
+
+    synchronized double rate() {
+        refill();
+        return rate;
+    }
+
+    private void refill() {
+        long now = nanoClock.getAsLong();
+        double seconds = (now - refilledAt) / (double) TimeUnit.SECONDS.toNanos(1);
+        refilledAt = now;
+
+        rate = Math.min(budget, rate + budget * RECOVERY_PER_SECOND * seconds);
+        balance = Math.min(rate, balance + rate * seconds);
+    }
+}
@@ -0,0 +1,268 @@
+package biz.cosee.talks.serverless.memory;
+
+import biz.cosee.talks.serverless.DailySummary;
+import biz.cosee.talks.serverless.Reward;
+import biz.cosee.talks.serverless.RewardPage;
+import biz.cosee.talks.serverless.RewardStore;
+import biz.cosee.talks.serverless.User;
+import biz.cosee.talks.serverless.dynamodb.RewardCursor;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+import static java.util.Comparator.comparing;
+import static java.util.Comparator.comparingLong;
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toMap;
+
+// no I/O at all: skip list indexes in the order the DynamoDB read paths return, LongAdder counters for the hot users.
+// Serves local runs and load tests, and is the baseline DynamodbAdapter's overhead is measured against.
+public class InMemoryRewardStore implements RewardStore {
+
+    private static final Comparator<RewardCursor> REWARD_ORDER = comparingLong(RewardCursor::getTs).reversed()
+            .thenComparing(RewardCursor::getId, Comparator.reverseOrder());
+
+    private final ConcurrentNavigableMap<RewardCursor, Reward> rewards = new ConcurrentSkipListMap<>(REWARD_ORDER);
+    // given and received in one index, a reward to oneself is listed once
+    private final ConcurrentMap<String, ConcurrentNavigableMap<RewardCursor, Reward>> rewardsByUser = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, LongAdder> totalRewards = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ConcurrentMap<String, LongAdder>> coinsGiven = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ConcurrentMap<String, LongAdder>> leaderboards = new ConcurrentHashMap<>();
+
+    private final AtomicLong version = new AtomicLong();
+
+    @Override
+    public void checkAndCreateTables() {
+    }
+
+    // counters are updated one by one, a concurrent reader may see the reward before the totals catch up. Like in
+    // DynamodbAdapter, a reward whose key is taken moves on to the next free millisecond and is counted once.
+    @Override
+    public void rewardUser(Reward reward) {
+        Reward stored = copyOf(reward);
+        stored.setId(day(stored.getTs()));
+        while (rewards.putIfAbsent(RewardCursor.after(stored), stored) != null) {
+            stored.setTs(stored.getTs() + 1);
+            stored.setId(day(stored.getTs()));
+        }
+        int amount = stored.getAmount();
+
+        counter(totalRewards, stored.getRewardedUser()).add(amount);
+        counter(totalRewards, stored.getGivenByUsername());
+        counter(counters(coinsGiven, stored.getGivenByUsername()), stored.getRewardedUser()).add(amount);
+        for (String period : leaderboardPeriods(stored)) {
+            counter(counters(leaderboards, period), stored.getRewardedUser()).add(amount);
+        }
+
+        RewardCursor key = RewardCursor.after(stored);
+        userIndex(stored.getGivenByUsername()).put(key, stored);
+        userIndex(stored.getRewardedUser()).put(key, stored);
+        version.incrementAndGet();
+    }
+
+    @Override
+    public void rewardUsers(List<Reward> rewards) {
+        rewards.forEach(this::rewardUser);
+    }
+
+    // nothing to wait for, the futures are done once returned
+    @Override
+    public CompletableFuture<Void> rewardUserAsync(Reward reward) {
+        rewardUser(reward);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public int consolidateUserCounters() {
+        return 0;
+    }
+
+    @Override
+    public int reapplyPendingDeltas() {
+        return 0;
+    }
+
+    // nothing piles up on disk, summaries are summed up from the rewards on every read
+    @Override
+    public int compactFinishedDays() {
+        return 0;
+    }
+
+    @Override
+    public int compactDays(LocalDate from, LocalDate to) {
+        return 0;
+    }
+
+    @Override
+    public List<Reward> retrieveRewardsSince(Long epochMillis) {
+        return streamRewardsSince(epochMillis).collect(toList());
+    }
+
+    @Override
+    public RewardPage retrieveRewardsSince(Long epochMillis, String cursor, int pageSize) {
+        return page(after(since(epochMillis), RewardCursor.decode(cursor)), pageSize);
+    }
+
+    @Override
+    public Stream<Reward> streamRewardsSince(Long epochMillis) {
+        return since(epochMillis).values().stream().map(InMemoryRewardStore::copyOf);
+    }
+
+    @Override
+    public RewardPage retrieveRewardsLast(int count, String cursor) {
+        return page(after(rewards, RewardCursor.decode(cursor)), count);
+    }
+
+    @Override
+    public List<Reward> retrieveRewardsContaining(User user, int limit) {
+        return rewardsByUser.getOrDefault(user.getUsername(), new ConcurrentSkipListMap<>()).values().stream()
+                .limit(limit)
+                .map(InMemoryRewardStore::copyOf)
+                .collect(toList());
+    }
+
+    @Override
+    public List<DailySummary> retrieveDailySummaries(LocalDate from, LocalDate to) {
+        LocalDate last = to.isAfter(LocalDate.now(ZoneOffset.UTC)) ? LocalDate.now(ZoneOffset.UTC) : to;
+        Map<String, List<Reward>> byDay = rewards.values().stream()
+                .filter(reward -> reward.getId().compareTo(from.toString()) >= 0 && reward.getId().compareTo(last.toString()) <= 0)
+                .collect(groupingBy(Reward::getId));
+
+        return Stream.iterate(from, day -> day.plusDays(1))
+                .limit(Math.max(0, ChronoUnit.DAYS.between(from, last) + 1))
+                .map(day -> DailySummary.summarize(day.toString(), byDay.getOrDefault(day.toString(), new ArrayList<>())))
+                .collect(toList());
+    }
+
+    @Override
+    public List<User> retrieveLeaderboard(String period, int limit) {
+        return leaderboards.getOrDefault(period, new ConcurrentHashMap<>()).entrySet().stream()
+                .map(entry -> User.builder().username(entry.getKey()).rewards(entry.getValue().intValue()).build())
+                .sorted(comparing(User::getRewards).reversed().thenComparing(User::getUsername))
+                .limit(limit)
+                .collect(toList());
+    }
+
+    @Override
+    public List<User> retrieveUsers(Collection<User> users) {
+        return load(users.stream().map(User::getUsername).distinct(), true);
+    }
+
+    @Override
+    public List<User> retrieveUsers() {
+        return load(totalRewards.keySet().stream(), true);
+    }
+
+    @Override
+    public List<User> retrieveUserSummaries(Collection<User> users) {
+        return load(users.stream().map(User::getUsername).distinct(), false);
+    }
+
+    @Override
+    public List<User> retrieveUserSummaries() {
+        return load(totalRewards.keySet().stream(), false);
+    }
+
+    @Override
+    public CompletableFuture<List<User>> retrieveUserSummariesAsync() {
+        return CompletableFuture.completedFuture(retrieveUserSummaries());
+    }
+
+    @Override
+    public long retrieveVersion() {
+        return version.get();
+    }
+
+    private List<User> load(Stream<String> usernames, boolean withCoins) {
+        return usernames
+                .filter(totalRewards::containsKey)
+                .map(username -> User.builder()
+                        .username(username)
+                        .rewards(totalRewards.get(username).intValue())
+                        .coinsGiven(withCoins ? coinsGivenBy(username) : null)
+                        .build())
+                .collect(toList());
+    }
+
+    private Map<String, Integer> coinsGivenBy(String giver) {
+        return coinsGiven.getOrDefault(giver, new ConcurrentHashMap<>()).entrySet().stream()
+                .collect(toMap(Map.Entry::getKey, entry -> entry.getValue().intValue()));
+    }
+
+    // every reward at or after epochMillis, ts = epochMillis included whatever the id
+    private ConcurrentNavigableMap<RewardCursor, Reward> since(Long epochMillis) {
+        return rewards.headMap(new RewardCursor("", epochMillis), true);
+    }
+
+    private static ConcurrentNavigableMap<RewardCursor, Reward> after(ConcurrentNavigableMap<RewardCursor, Reward> rewards,
+                                                                     RewardCursor cursor) {
+        return cursor == null ? rewards : rewards.tailMap(cursor, false);
+    }
+
+    private static RewardPage page(ConcurrentNavigableMap<RewardCursor, Reward> rewards, int pageSize) {
+        Iterator<Reward> iterator = rewards.values().iterator();
+        List<Reward> page = new ArrayList<>(pageSize);
+        while (page.size() < pageSize && iterator.hasNext()) {
+            page.add(copyOf(iterator.next()));
+        }
+
+        String cursor = iterator.hasNext() && !page.isEmpty()
+                ? RewardCursor.after(page.get(page.size() - 1)).encode()
+                : null;
+        return new RewardPage(page, cursor);
+    }
+
+    private ConcurrentNavigableMap<RewardCursor, Reward> userIndex(String username) {
+        return rewardsByUser.computeIfAbsent(username, name -> new ConcurrentSkipListMap<>(REWARD_ORDER));
+    }
+
+    private static ConcurrentMap<String, LongAdder> counters(ConcurrentMap<String, ConcurrentMap<String, LongAdder>> counters,
+                                                           String key) {
+        return counters.computeIfAbsent(key, name -> new ConcurrentHashMap<>());
+    }
+
+    private static LongAdder counter(ConcurrentMap<String, LongAdder> counters, String key) {
+        return counters.computeIfAbsent(key, name -> new LongAdder());
+    }
+
+    // same partition key as shard 0 of the rewards table
+    private static String day(long ts) {
+        return Instant.ofEpochMilli(ts).atZone(ZoneOffset.UTC).toLocalDate().toString();
+    }
+
+    private static List<String> leaderboardPeriods(Reward reward) {
+        return Arrays.asList(ALL_TIME, YearMonth.from(Instant.ofEpochMilli(reward.getTs()).atZone(ZoneOffset.UTC)).toString());
+    }
+
+    // callers get their own instances, like rewards freshly mapped from DynamoDB items
+    private static Reward copyOf(Reward reward) {
+        return Reward.builder()
+                .id(reward.getId())
+                .ts(reward.getTs())
+                .givenByUsername(reward.getGivenByUsername())
+                .rewardedUser(reward.getRewardedUser())
+                .amount(reward.getAmount())
+                .description(reward.getDescription())
+                .build();
+    }
+}
@@ -0,0 +1,70 @@
+package biz.cosee.talks.serverless.metrics;
+
+import com.amazonaws.services.dynamodbv2.model.*;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+// capacity units of a DynamoDB result, only present when the request asked for ReturnConsumedCapacity
+public class ConsumedCapacities {
+
+    private ConsumedCapacities() {
+    }
+
+    // one entry per table touched, empty for results without capacity
+    public static List<ConsumedCapacity> of(Object result) {
+        if (result instanceof QueryResult) {
+            return single(((QueryResult) result).getConsumedCapacity());
+        } else if (result instanceof ScanResult) {
+            return single(((ScanResult) result).getConsumedCapacity());
+        } else if (result instanceof GetItemResult) {
+            return single(((GetItemResult) result).getConsumedCapacity());
+        } else if (result instanceof BatchGetItemResult) {
+            return list(((BatchGetItemResult) result).getConsumedCapacity());
+        } else if (result instanceof TransactGetItemsResult) {
+            return list(((TransactGetItemsResult) result).getConsumedCapacity());
+        } else if (result instanceof PutItemResult) {
+            return single(((PutItemResult) result).getConsumedCapacity());
+        } else if (result instanceof UpdateItemResult) {
+            return single(((UpdateItemResult) result).getConsumedCapacity());
+        } else if (result instanceof DeleteItemResult) {
+            return single(((DeleteItemResult) result).getConsumedCapacity());
+        } else if (result instanceof BatchWriteItemResult) {
+            return list(((BatchWriteItemResult) result).getConsumedCapacity());
+        } else if (result instanceof TransactWriteItemsResult) {
+            return list(((TransactWriteItemsResult) result).getConsumedCapacity());
+        }
+        return Collections.emptyList();
+    }
+
+    static double readUnits(Object result) {
+        return isRead(result) ? units(of(result)) : 0;
+    }
+
+    static double writeUnits(Object result) {
+        return isRead(result) ? 0 : units(of(result));
+    }
+
+    private static boolean isRead(Object result) {
+        return result instanceof QueryResult
+                || result instanceof ScanResult
+                || result instanceof GetItemResult
+                || result instanceof BatchGetItemResult
+                || result instanceof TransactGetItemsResult;
+    }
+
+    private static List<ConsumedCapacity> single(ConsumedCapacity capacity) {
+        return capacity == null ? Collections.emptyList() : Collections.singletonList(capacity);
+    }
+
+    private static List<ConsumedCapacity> list(List<ConsumedCapacity> capacities) {
+        return capacities == null ? Collections.emptyList() : capacities;
+    }
+
+    private static double units(Collection<ConsumedCapacity> capacities) {
+        return capacities.stream()
+                .mapToDouble(capacity -> capacity.getCapacityUnits() == null ? 0 : capacity.getCapacityUnits())
+                .sum();
+    }
+}
@@ -0,0 +1,217 @@
+package biz.cosee.talks.serverless.metrics;
+
+import com.amazonaws.Request;
+import com.amazonaws.Response;
+import com.amazonaws.metrics.RequestMetricCollector;
+import com.amazonaws.util.AWSRequestMetrics;
+import com.amazonaws.util.json.Jackson;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import static java.util.stream.Collectors.toList;
+
+// per operation latency, capacity and request counters, logged as one JSON line per operation and window
+@Slf4j
+public class Metrics {
+
+    private static final long DEFAULT_WINDOW_MILLIS = 60_000;
+    private static final String UNATTRIBUTED = "unattributed";
+
+    private static final Metrics GLOBAL = new Metrics(DEFAULT_WINDOW_MILLIS, System::currentTimeMillis);
+
+    // innermost timed operation of this thread, DynamoDB requests are booked onto it
+    private static final ThreadLocal<String> CURRENT_OPERATION = new ThreadLocal<>();
+
+    private final long windowMillis;
+    private final LongSupplier clock;
+    private final AtomicReference<Map<String, Recorder>> window = new AtomicReference<>(new ConcurrentHashMap<>());
+    private final AtomicLong windowStart;
+
+    public Metrics() {
+        this(DEFAULT_WINDOW_MILLIS, System::currentTimeMillis);
+    }
+
+    Metrics(long windowMillis, LongSupplier clock) {
+        this.windowMillis = windowMillis;
+        this.clock = clock;
+        this.windowStart = new AtomicLong(clock.getAsLong());
+    }
+
+    public static Metrics global() {
+        return GLOBAL;
+    }
+
+    public interface Call<T, E extends Exception> {
+        T call() throws E;
+    }
+
+    public <T, E extends Exception> T time(String operation, Call<T, E> call) throws E {
+        String outer = CURRENT_OPERATION.get();
+        CURRENT_OPERATION.set(operation);
+        Recorder recorder = recorder(operation);
+        long start = System.nanoTime();
+        try {
+            return call.call();
+        } catch (Exception | Error e) {
+            recorder.errors.increment();
+            throw e;
+        } finally {
+            recorder.latency.record(System.nanoTime() - start);
+            if (outer == null) {
+                CURRENT_OPERATION.remove();
+            } else {
+                CURRENT_OPERATION.set(outer);
+            }
+        }
+    }
+
+    // for latencies measured elsewhere, e.g. from the intended start of a scheduled request
+    public void record(String operation, long nanos, boolean failed) {
+        Recorder recorder = recorder(operation);
+        if (failed) {
+            recorder.errors.increment();
+        }
+        recorder.latency.record(nanos);
+    }
+
+    // tasks run on other threads still book their requests onto the operation that submitted them
+    public Executor propagating(Executor executor) {
+        return task -> {
+            String operation = CURRENT_OPERATION.get();
+            executor.execute(() -> withOperation(operation, () -> {
+                task.run();
+                return null;
+            }));
+        };
+    }
+
+    public <T> Callable<T> propagating(Callable<T> task) {
+        String operation = CURRENT_OPERATION.get();
+        return () -> withOperation(operation, task::call);
+    }
+
+    private static <T, E extends Exception> T withOperation(String operation, Call<T, E> call) throws E {
+        String outer = CURRENT_OPERATION.get();
+        if (operation == null) {
+            CURRENT_OPERATION.remove();
+        } else {
+            CURRENT_OPERATION.set(operation);
+        }
+        try {
+            return call.call();
+        } finally {
+            if (outer == null) {
+                CURRENT_OPERATION.remove();
+            } else {
+                CURRENT_OPERATION.set(outer);
+            }
+        }
+    }
+
+    void recordRequest(double readUnits, double writeUnits, long retries, long throttles) {
+        String operation = CURRENT_OPERATION.get();
+        Recorder recorder = recorder(operation == null ? UNATTRIBUTED : operation);
+        recorder.requests.increment();
+        recorder.rcu.add(readUnits);
+        recorder.wcu.add(writeUnits);
+        recorder.retries.add(retries);
+        recorder.throttles.add(throttles);
+    }
+
+    // to be registered on the DynamoDB client, the only place that sees retries and throttling
+    public RequestMetricCollector requestMetricCollector() {
+        return new RequestMetricCollector() {
+            @Override
+            public void collectMetrics(Request<?> request, Response<?> response) {
+                AWSRequestMetrics requestMetrics = request.getAWSRequestMetrics();
+                Object result = response == null ? null : response.getAwsResponse();
+
+                recordRequest(
+                        ConsumedCapacities.readUnits(result),
+                        ConsumedCapacities.writeUnits(result),
+                        counter(requestMetrics, AWSRequestMetrics.Field.HttpClientRetryCount),
+                        counter(requestMetrics, AWSRequestMetrics.Field.ThrottleException));
+            }
+        };
+    }
+
+    private static long counter(AWSRequestMetrics requestMetrics, AWSRequestMetrics.Field field) {
+        if (requestMetrics == null) {
+            return 0;
+        }
+        Number value = requestMetrics.getTimingInfo().getCounter(field.name());
+        return value == null ? 0 : value.longValue();
+    }
+
+    public List<OperationStats> snapshot() {
+        return window.get().entrySet().stream()
+                .map(entry -> entry.getValue().stats(entry.getKey()))
+                .collect(toList());
+    }
+
+    public void flushIfDue() {
+        long now = clock.getAsLong();
+        long start = windowStart.get();
+        if (now - start >= windowMillis && windowStart.compareAndSet(start, now)) {
+            flush();
+        }
+    }
+
+    public void flush() {
+        Map<String, Recorder> closed = window.getAndSet(new ConcurrentHashMap<>());
+        closed.forEach((operation, recorder) -> log.info(toJson(recorder.stats(operation))));
+    }
+
+    public static String toJson(OperationStats stats) {
+        Map<String, Object> line = new LinkedHashMap<>();
+        line.put("metric", "operation");
+        line.put("op", stats.getOperation());
+        line.put("count", stats.getCount());
+        line.put("errors", stats.getErrors());
+        line.put("p50Ms", round(stats.getP50Ms()));
+        line.put("p95Ms", round(stats.getP95Ms()));
+        line.put("p99Ms", round(stats.getP99Ms()));
+        line.put("maxMs", round(stats.getMaxMs()));
+        line.put("rcu", round(stats.getRcu()));
+        line.put("wcu", round(stats.getWcu()));
+        line.put("requests", stats.getRequests());
+        line.put("retries", stats.getRetries());
+        line.put("throttles", stats.getThrottles());
+        return Jackson.toJsonString(line);
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+
+    private Recorder recorder(String operation) {
+        return window.get().computeIfAbsent(operation, name -> new Recorder());
+    }
+
+    private static class Recorder {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+        private final DoubleAdder rcu = new DoubleAdder();
+        private final DoubleAdder wcu = new DoubleAdder();
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder retries = new LongAdder();
+        private final LongAdder throttles = new LongAdder();
+
+        private OperationStats stats(String operation) {
+            return new OperationStats(operation, latency.count(), errors.sum(),
+                    latency.percentileMillis(0.50), latency.percentileMillis(0.95), latency.percentileMillis(0.99),
+                    latency.maxMillis(), rcu.sum(), wcu.sum(), requests.sum(), retries.sum(), throttles.sum());
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package biz.cosee.talks.serverless.metrics;
+
+import lombok.Value;
+
+@Value
+public class OperationStats {
+
+    private String operation;
+
+    private long count;
+    private long errors;
+
+    private double p50Ms;
+    private double p95Ms;
+    private double p99Ms;
+    private double maxMs;
+
+    private double rcu;
+    private double wcu;
+
+    // DynamoDB requests, i.e. pages for queries and scans
+    private long requests;
+    private long retries;
+    private long throttles;
+}
@@ -1,23 +1,40 @@
 package biz.cosee.talks.serverless;
 
 import biz.cosee.talks.serverless.dynamodb.DynamodbAdapter;
+import biz.cosee.talks.serverless.dynamodb.DynamodbSettings;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClientBuilder;
 import com.amazonaws.services.dynamodbv2.document.DynamoDB;
+import com.amazonaws.services.dynamodbv2.document.Item;
+import com.amazonaws.services.dynamodbv2.document.Table;
+import com.amazonaws.services.dynamodbv2.model.DescribeTimeToLiveRequest;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
 import lombok.val;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.ZoneOffset;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
 
+import static java.util.Collections.singletonList;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 public class DynamoDbWriterTest {
 
@@ -131,6 +148,23 @@ public class DynamoDbWriterTest {
         assertThat(expectedNames).containsAll(names);
     }
 
+    @Test
+    public void whenScanningUsersInSegmentsShouldReturnAllUsers() {
+        IntStream.range(0, 40).forEach(i -> writer.rewardUser(Reward.builder()
+                .givenByUsername("giver" + i)
+                .rewardedUser("receiver" + i)
+                .amount(10)
+                .ts((long) i)
+                .description("placeholder").build()));
+
+        val settings = new DynamodbSettings();
+        settings.setUserScanSegments(4);
+        val segmentedWriter = new DynamodbAdapter(dynamodb, "tmp-tests", settings);
+
+        assertThat(segmentedWriter.retrieveUsers()).hasSize(80);
+        assertThat(writer.retrieveUsers()).hasSize(80);
+    }
+
     @Test
     public void whenInsertingFiveItemsAndRequestingThreeShouldReturnLastThree() {
         Arrays.stream(new Reward[]{
@@ -197,6 +231,536 @@ public class DynamoDbWriterTest {
         assertOrderedDescending(rewards);
     }
 
+    @Test
+    public void whenTodayHasTooFewRewardsLatestShouldContinueWithYesterday() {
+        String yesterday = LocalDate.now(ZoneOffset.UTC).minusDays(1).toString();
+        Table rewardTable = new DynamoDB(dynamodb).getTable("tmp-tests-rewards");
+        IntStream.range(0, 3).forEach(i -> rewardTable.putItem(new Item()
+                .withString("id", yesterday)
+                .withNumber("ts", 10 + i)
+                .withNumber("amount", 10)
+                .withString("fromUser", "andreas")
+                .withString("toUser", "alex")
+                .withString("description", "placeholder")));
+
+        writer.rewardUser(Reward.builder()
+                .givenByUsername("alex")
+                .rewardedUser("andreas")
+                .amount(10)
+                .ts(20L)
+                .description("placeholder").build());
+
+        val rewards = writer.retrieveRewardsLast(3);
+
+        assertThat(rewards).extracting(Reward::getTs).containsExactly(20L, 12L, 11L);
+        assertThat(rewards).extracting(Reward::getId).containsExactly(today(), yesterday, yesterday);
+    }
+
+    @Test
+    public void whenQueryingRecentRewardsShouldOnlyReturnNewerOnes() {
+        long now = System.currentTimeMillis();
+        Arrays.asList(
+                Reward.builder()
+                        .givenByUsername("andreas")
+                        .rewardedUser("alex")
+                        .amount(10)
+                        .ts(now - 60_000)
+                        .description("placeholder").build(),
+                Reward.builder()
+                        .givenByUsername("alex")
+                        .rewardedUser("andreas")
+                        .amount(10)
+                        .ts(now - 1_000)
+                        .description("placeholder").build(),
+                Reward.builder()
+                        .givenByUsername("markus")
+                        .rewardedUser("alex")
+                        .amount(10)
+                        .ts(now)
+                        .description("placeholder").build()
+        ).forEach(r -> writer.rewardUser(r));
+
+        val rewards = writer.retrieveRewardsSince(now - 30_000);
+
+        assertThat(rewards).extracting(Reward::getTs).containsExactly(now, now - 1_000);
+    }
+
+    @Test
+    public void whenBulkInsertingRewardsShouldCoalesceUserCounters() {
+        val rewards = IntStream.range(0, 60)
+                .mapToObj(i -> Reward.builder()
+                        .givenByUsername(i % 2 == 0 ? "andreas" : "markus")
+                        .rewardedUser("alex")
+                        .amount(5)
+                        .ts((long) i)
+                        .description("placeholder").build())
+                .collect(Collectors.toList());
+
+        writer.rewardUsers(rewards);
+
+        assertThat(writer.retrieveRewardsSince(0L)).hasSize(60);
+
+        val users = writer.retrieveUsers();
+        val alex = users.stream()
+                .filter(u -> u.getUsername().equals("alex"))
+                .findFirst()
+                .orElseThrow(NullPointerException::new);
+        val andreas = users.stream()
+                .filter(u -> u.getUsername().equals("andreas"))
+                .findFirst()
+                .orElseThrow(NullPointerException::new);
+
+        assertThat(alex.getRewards()).isEqualTo(300);
+        assertThat(andreas.getCoinsGiven().get("alex")).isEqualTo(150);
+    }
+
+    @Test
+    public void whenBulkInsertFailsPartlyShouldCountWhatWasStored() {
+        val rewards = IntStream.range(0, 30)
+                .mapToObj(i -> Reward.builder()
+                        .givenByUsername("andreas")
+                        .rewardedUser("alex")
+                        .amount(5)
+                        .ts((long) i)
+                        .description(i == 27 ? "throttled" : "placeholder").build())
+                .collect(Collectors.toList());
+        AmazonDynamoDB throttledPut = throttledWhen(request -> request instanceof PutItemRequest
+                && ((PutItemRequest) request).getItem().get("description").getS().equals("throttled"));
+
+        assertThatThrownBy(() -> new DynamodbAdapter(throttledPut, "tmp-tests").rewardUsers(rewards))
+                .hasMessage("Stored 29 of 30 rewards");
+
+        val andreas = User.builder().username("andreas").build();
+        val alex = User.builder().username("alex").build();
+        assertThat(writer.retrieveRewardsSince(0L)).hasSize(29);
+        assertThat(writer.retrieveUsers(singletonList(alex))).extracting(User::getRewards).containsExactly(145);
+        assertThat(writer.retrieveUsers(singletonList(andreas)).get(0).getCoinsGiven()).containsEntry("alex", 145);
+        assertThat(writer.retrieveLeaderboard(DynamodbAdapter.ALL_TIME, 1)).extracting(User::getRewards).containsExactly(145);
+    }
+
+    @Test
+    public void whenRewardKeyIsTakenShouldMoveOnInsteadOfOverwriting() {
+        new DynamoDB(dynamodb).getTable("tmp-tests-rewards").putItem(new Item()
+                .withString("id", LocalDate.now(ZoneOffset.UTC).toString())
+                .withNumber("ts", 7L)
+                .withNumber("amount", 1)
+                .withString("fromUser", "markus")
+                .withString("toUser", "andreas")
+                .withString("description", "first"));
+
+        writer.rewardUser(Reward.builder()
+                .givenByUsername("andreas")
+                .rewardedUser("alex")
+                .amount(10)
+                .ts(7L)
+                .description("second").build());
+
+        val rewards = writer.retrieveRewardsSince(0L);
+        assertThat(rewards).extracting(Reward::getTs).containsExactly(8L, 7L);
+        assertThat(rewards).extracting(Reward::getDescription).containsExactly("second", "first");
+        assertThat(writer.retrieveUsers(singletonList(User.builder().username("alex").build())))
+                .extracting(User::getRewards).containsExactly(10);
+    }
+
+    @Test
+    public void whenWritingToShardedPartitionsShouldMergeShardsOnRead() {
+        val settings = new DynamodbSettings();
+        settings.setRewardWriteShards(4);
+        val shardedWriter = new DynamodbAdapter(dynamodb, "tmp-tests", settings);
+
+        long now = System.currentTimeMillis();
+        IntStream.range(0, 20).forEach(i -> shardedWriter.rewardUser(Reward.builder()
+                .givenByUsername("andreas")
+                .rewardedUser("alex")
+                .amount(10)
+                .ts(now - i)
+                .description("placeholder").build()));
+
+        val last = shardedWriter.retrieveRewardsLast(5);
+        assertThat(last).extracting(Reward::getTs).containsExactly(now, now - 1, now - 2, now - 3, now - 4);
+
+        val since = shardedWriter.retrieveRewardsSince(now - 9);
+        assertThat(since).hasSize(10);
+        assertOrderedDescending(since);
+
+        assertThat(shardedWriter.streamRewardsSince(now - 9).collect(Collectors.toList())).isEqualTo(since);
+    }
+
+    @Test
+    public void whenAskingForMoreDaysThanQueriedShouldOnlyScanTheFullHistory() {
+        val settings = new DynamodbSettings();
+        settings.setMaxDayPartitionsPerQuery(1);
+        val limitedWriter = new DynamodbAdapter(dynamodb, "tmp-tests", settings);
+
+        LongStream.range(0, 5).forEach(i -> limitedWriter.rewardUser(Reward.builder()
+                .givenByUsername("andreas")
+                .rewardedUser("alex")
+                .amount(10)
+                .ts(i)
+                .description("placeholder").build()));
+
+        assertThatThrownBy(() -> limitedWriter.retrieveRewardsSince(2L)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> limitedWriter.streamRewardsSince(2L)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> limitedWriter.retrieveRewardsSince(2L, null, 2)).isInstanceOf(IllegalArgumentException.class);
+        assertThat(limitedWriter.streamRewardsSince(0L).collect(Collectors.toList()))
+                .extracting(Reward::getTs).containsExactlyInAnyOrder(0L, 1L, 2L, 3L, 4L);
+    }
+
+    @Test
+    public void whenAskingForMonthsOfRewardsShouldQueryEveryDay() {
+        long now = System.currentTimeMillis();
+        writer.rewardUser(Reward.builder()
+                .givenByUsername("andreas")
+                .rewardedUser("alex")
+                .amount(10)
+                .ts(now)
+                .description("placeholder").build());
+
+        long since = now - Duration.ofDays(90).toMillis();
+        assertThat(writer.retrieveRewardsSince(since)).extracting(Reward::getTs).containsExactly(now);
+        assertThat(writer.streamRewardsSince(since).collect(Collectors.toList())).extracting(Reward::getTs).containsExactly(now);
+    }
+
+    @Test
+    public void whenRewardingUsersShouldMaintainLeaderboard() {
+        writer.rewardUser(Reward.builder()
+                .givenByUsername("andreas")
+                .rewardedUser("alex")
+                .amount(30)
+                .ts(1L)
+                .description("placeholder").build());
+        writer.rewardUser(Reward.builder()
+                .givenByUsername("markus")
+                .rewardedUser("markus")
+                .amount(10)
+                .ts(2L)
+                .description("placeholder").build());
+        writer.rewardUsers(Arrays.asList(
+                Reward.builder()
+                        .givenByUsername("alex")
+                        .rewardedUser("markus")
+                        .amount(15)
+                        .ts(3L)
+                        .description("placeholder").build(),
+                Reward.builder()
+                        .givenByUsername("alex")
+                        .rewardedUser("andreas")
+                        .amount(5)
+                        .ts(4L)
+                        .description("placeholder").build()));
+
+        val top = writer.retrieveLeaderboard(DynamodbAdapter.ALL_TIME, 2);
+        assertThat(top).extracting(User::getUsername).containsExactly("alex", "markus");
+        assertThat(top).extracting(User::getRewards).containsExactly(30, 25);
+
+        assertThat(writer.retrieveLeaderboard("1970-01", 20)).hasSize(3);
+        assertThat(writer.retrieveLeaderboard("2016-10", 20)).isEmpty();
+    }
+
+    @Test
+    public void whenRewardingOneUserConcurrentlyShouldCountEveryReward() {
+        IntStream.range(0, 40).parallel().forEach(i -> writer.rewardUser(Reward.builder()
+                .givenByUsername("giver" + (i % 8))
+                .rewardedUser("alex")
+                .amount(1)
+                .ts((long) i)
+                .description("placeholder").build()));
+
+        val alex = User.builder().username("alex").build();
+        assertThat(writer.retrieveRewardsSince(0L)).hasSize(40);
+        assertThat(writer.retrieveUsers(singletonList(alex))).extracting(User::getRewards).containsExactly(40);
+        assertThat(writer.retrieveLeaderboard(DynamodbAdapter.ALL_TIME, 1)).extracting(User::getRewards).containsExactly(40);
+    }
+
+    @Test
+    public void whenWritingRewardsShouldMoveVersionOn() {
+        long initial = writer.retrieveVersion();
+
+        writer.rewardUser(Reward.builder()
+                .givenByUsername("andreas")
+                .rewardedUser("alex")
+                .amount(10)
+                .ts(1L)
+                .description("placeholder").build());
+        long afterReward = writer.retrieveVersion();
+        writer.rewardUsers(singletonList(Reward.builder()
+                .givenByUsername("alex")
+                .rewardedUser("andreas")
+                .amount(5)
+                .ts(2L)
+                .description("placeholder").build()));
+
+        assertThat(afterReward).isGreaterThan(initial);
+        assertThat(writer.retrieveVersion()).isGreaterThan(afterReward);
+        assertThat(writer.retrieveLeaderboard("#meta", 20)).isEmpty();
+    }
+
+    @Test
+    public void whenCounterUpdateFailsShouldKeepItPendingUntilReapplied() {
+        AmazonDynamoDB throttledCoins = throttledWhen(request -> request instanceof UpdateItemRequest
+                && ((UpdateItemRequest) request).getTableName().equals("tmp-tests-coins"));
+        new DynamodbAdapter(throttledCoins, "tmp-tests").rewardUser(Reward.builder()
+                .givenByUsername("andreas")
+                .rewardedUser("alex")
+                .amount(10)
+                .ts(1L)
+                .description("placeholder").build());
+
+        val andreas = User.builder().username("andreas").build();
+        assertThat(writer.retrieveRewardsSince(0L)).hasSize(1);
+        assertThat(writer.retrieveUsers(singletonList(andreas)).get(0).getCoinsGiven()).isEmpty();
+
+        assertThat(writer.reapplyPendingDeltas()).isEqualTo(1);
+        assertThat(writer.reapplyPendingDeltas()).isEqualTo(0);
+        assertThat(writer.retrieveUsers(singletonList(andreas)).get(0).getCoinsGiven()).containsEntry("alex", 10);
+        assertThat(writer.retrieveLeaderboard(DynamodbAdapter.ALL_TIME, 20)).extracting(User::getUsername).containsExactly("alex");
+    }
+
+    @Test
+    public void whenShardingUserCountersShouldSumShardsAndConsolidate() {
+        val settings = new DynamodbSettings();
+        settings.setUserCounterShards(4);
+        val shardedWriter = new DynamodbAdapter(dynamodb, "tmp-tests", settings);
+
+        IntStream.range(0, 20).forEach(i -> shardedWriter.rewardUser(Reward.builder()
+                .givenByUsername(i % 2 == 0 ? "andreas" : "alex")
+                .rewardedUser("alex")
+                .amount(10)
+                .ts((long) i)
+                .description("placeholder").build()));
+
+        val alex = User.builder().username("alex").build();
+        assertThat(shardedWriter.retrieveUsers()).extracting(User::getUsername).containsOnly("alex", "andreas");
+        assertThat(shardedWriter.retrieveUsers(singletonList(alex))).extracting(User::getRewards).containsExactly(200);
+
+        shardedWriter.consolidateUserCounters();
+
+        assertThat(dynamodb.scan(new ScanRequest("tmp-tests-users")).getCount()).isEqualTo(2);
+        assertThat(writer.retrieveUsers(singletonList(alex))).extracting(User::getRewards).containsExactly(200);
+        assertThat(writer.retrieveUsers(singletonList(alex)).get(0).getCoinsGiven().get("alex")).isEqualTo(100);
+    }
+
+    @Test
+    public void whenMigratingLegacyCoinsShouldMoveThemToCoinsTable() {
+        new DynamoDB(dynamodb).getTable("tmp-tests-users").putItem(new Item()
+                .withString("username", "andreas")
+                .withNumber("rewardsFor:alex", 30)
+                .withNumber("rewardsFor:markus", 5));
+        writer.rewardUser(Reward.builder()
+                .givenByUsername("andreas")
+                .rewardedUser("alex")
+                .amount(10)
+                .ts(1L)
+                .description("placeholder").build());
+
+        val andreas = User.builder().username("andreas").build();
+        assertThat(writer.retrieveUsers(singletonList(andreas)).get(0).getCoinsGiven())
+                .containsEntry("alex", 40).containsEntry("markus", 5);
+
+        assertThat(writer.migrateLegacyCoins()).isEqualTo(2);
+
+        assertThat(new DynamoDB(dynamodb).getTable("tmp-tests-users").getItem("username", "andreas").asMap())
+                .doesNotContainKeys("rewardsFor:alex", "rewardsFor:markus");
+        assertThat(writer.retrieveUsers(singletonList(andreas)).get(0).getCoinsGiven())
+                .containsEntry("alex", 40).containsEntry("markus", 5);
+        assertThat(writer.retrieveUsers().stream().filter(u -> u.getUsername().equals("andreas")).findFirst()
+                .orElseThrow(NullPointerException::new).getCoinsGiven())
+                .containsEntry("alex", 40).containsEntry("markus", 5);
+    }
+
+    @Test
+    public void whenCheckingExistingTablesShouldMigrateMoreLegacyCoinsThanFitInOneTransaction() throws InterruptedException {
+        Item andreas = new Item().withString("username", "andreas");
+        IntStream.range(0, 30).forEach(i -> andreas.withNumber("rewardsFor:user" + i, i + 1));
+        new DynamoDB(dynamodb).getTable("tmp-tests-users").putItem(andreas);
+
+        writer.checkAndCreateTables();
+
+        assertThat(new DynamoDB(dynamodb).getTable("tmp-tests-users").getItem("username", "andreas").asMap())
+                .containsOnlyKeys("username");
+        assertThat(writer.retrieveUsers(singletonList(User.builder().username("andreas").build())).get(0).getCoinsGiven())
+                .hasSize(30).containsEntry("user0", 1).containsEntry("user29", 30);
+    }
+
+    @Test
+    public void whenRequestingSummariesShouldOnlyReturnNamesAndTotals() {
+        writer.rewardUsers(Arrays.asList(
+                Reward.builder()
+                        .givenByUsername("andreas")
+                        .rewardedUser("alex")
+                        .amount(30)
+                        .ts(1L)
+                        .description("placeholder").build(),
+                Reward.builder()
+                        .givenByUsername("alex")
+                        .rewardedUser("markus")
+                        .amount(15)
+                        .ts(2L)
+                        .description("placeholder").build()));
+
+        val summaries = writer.retrieveUserSummaries();
+        assertThat(summaries).extracting(User::getUsername).containsOnly("andreas", "alex", "markus");
+        assertThat(summaries).allMatch(user -> user.getCoinsGiven() == null);
+
+        val alex = writer.retrieveUserSummaries(singletonList(User.builder().username("alex").build()));
+        assertThat(alex).extracting(User::getRewards).containsExactly(30);
+        assertThat(alex).allMatch(user -> user.getCoinsGiven() == null);
+    }
+
+    @Test
+    public void whenRequestingMoreThanOneBatchOfUsersShouldReturnAllOnce() {
+        writer.rewardUsers(IntStream.range(0, 250)
+                .mapToObj(i -> Reward.builder()
+                        .givenByUsername("user" + i)
+                        .rewardedUser("user" + (i + 1) % 250)
+                        .amount(10)
+                        .ts((long) i)
+                        .description("placeholder").build())
+                .collect(Collectors.toList()));
+
+        List<User> requested = IntStream.range(0, 500)
+                .mapToObj(i -> User.builder().username("user" + i % 250).build())
+                .collect(Collectors.toList());
+
+        val users = writer.retrieveUsers(requested);
+        assertThat(users).hasSize(250);
+        assertThat(users).extracting(User::getRewards).containsOnly(10);
+        assertThat(writer.retrieveUserSummaries(requested)).hasSize(250);
+    }
+
+    @Test
+    public void whenPagingWithCursorShouldReturnEveryRewardOnce() {
+        val settings = new DynamodbSettings();
+        settings.setRewardWriteShards(4);
+        val shardedWriter = new DynamodbAdapter(dynamodb, "tmp-tests", settings);
+
+        long now = System.currentTimeMillis();
+        IntStream.range(0, 20).forEach(i -> shardedWriter.rewardUser(Reward.builder()
+                .givenByUsername("andreas")
+                .rewardedUser("alex")
+                .amount(10)
+                .ts(now - i)
+                .description("placeholder").build()));
+
+        val expected = shardedWriter.retrieveRewardsSince(now - 19);
+
+        List<Reward> paged = new ArrayList<>();
+        RewardPage page = shardedWriter.retrieveRewardsSince(now - 19, null, 6);
+        paged.addAll(page.getRewards());
+        while (page.getCursor() != null) {
+            assertThat(page.getRewards()).hasSize(6);
+            page = shardedWriter.retrieveRewardsSince(now - 19, page.getCursor(), 6);
+            paged.addAll(page.getRewards());
+        }
+        assertThat(paged).isEqualTo(expected);
+
+        val first = shardedWriter.retrieveRewardsLast(15, null);
+        val rest = shardedWriter.retrieveRewardsLast(15, first.getCursor());
+        assertThat(first.getRewards()).isEqualTo(expected.subList(0, 15));
+        assertThat(rest.getRewards()).isEqualTo(expected.subList(15, 20));
+        assertThat(rest.getCursor()).isNull();
+    }
+
+    @Test
+    public void whenWritingThroughCachingAdapterShouldInvalidateCachedReads() {
+        val settings = new DynamodbSettings();
+        settings.setCacheTtlMillis(60_000);
+        val cachingWriter = new DynamodbAdapter(dynamodb, "tmp-tests", settings);
+
+        assertThat(cachingWriter.retrieveUsers()).isEmpty();
+        assertThat(cachingWriter.retrieveUsers()).isEmpty();
+
+        cachingWriter.rewardUser(Reward.builder()
+                .givenByUsername("andreas")
+                .rewardedUser("alex")
+                .amount(10)
+                .ts(1L)
+                .description("placeholder").build());
+
+        assertThat(cachingWriter.retrieveUsers()).hasSize(2);
+        assertThat(cachingWriter.cacheStats().getHits()).isEqualTo(1);
+        assertThat(cachingWriter.cacheStats().getMisses()).isEqualTo(2);
+    }
+
+    @Test
+    public void whenCompactingShouldServeFinishedDaysFromSummaries() {
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        LocalDate day = today.minusDays(2);
+        Table rewardTable = new DynamoDB(dynamodb).getTable("tmp-tests-rewards");
+        rewardTable.putItem(rawReward(day, 1L, "markus", "alex", 1));
+        rewardTable.putItem(rawReward(day, 2L, "andreas", "alex", 10));
+        rewardTable.putItem(rawReward(day, 3L, "andreas", "alex", 5));
+
+        // the last week, or the week before yesterday during the first minutes of a day
+        assertThat(writer.compactFinishedDays()).isBetween(6, 7);
+        assertThat(writer.compactFinishedDays()).isEqualTo(0);
+
+        // as if the rewards had expired, the compacted day no longer needs them
+        LongStream.rangeClosed(1, 3).forEach(ts -> rewardTable.deleteItem("id", day.toString(), "ts", ts));
+        writer.rewardUser(Reward.builder()
+                .givenByUsername("alex")
+                .rewardedUser("markus")
+                .amount(2)
+                .ts(System.currentTimeMillis())
+                .description("placeholder").build());
+
+        val days = writer.retrieveDailySummaries(day, today.plusDays(1));
+        assertThat(days).extracting(DailySummary::getDay)
+                .containsExactly(day.toString(), today.minusDays(1).toString(), today.toString());
+        assertThat(days.get(0).getCount()).isEqualTo(3);
+        assertThat(days.get(0).getAmount()).isEqualTo(16);
+        assertThat(days.get(0).getTotals()).containsExactly(
+                new DailySummary.PairTotal("andreas", "alex", 2, 15),
+                new DailySummary.PairTotal("markus", "alex", 1, 1));
+        assertThat(days.get(1).getCount()).isEqualTo(0);
+        assertThat(days.get(2).getTotals()).containsExactly(new DailySummary.PairTotal("alex", "markus", 1, 2));
+    }
+
+    @Test
+    public void whenBackfillingShouldCompactDaysBeyondTheLookback() {
+        LocalDate day = LocalDate.now(ZoneOffset.UTC).minusDays(40);
+        new DynamoDB(dynamodb).getTable("tmp-tests-rewards").putItem(rawReward(day, 1L, "markus", "alex", 3));
+
+        assertThat(writer.compactDays(day.minusDays(1), day.plusDays(1))).isEqualTo(3);
+        assertThat(writer.compactDays(day.minusDays(1), day.plusDays(1))).isEqualTo(0);
+        assertThat(writer.retrieveDailySummaries(day, day)).extracting(DailySummary::getAmount).containsExactly(3);
+
+        assertThatThrownBy(() -> writer.retrieveDailySummaries(day.minusYears(2), day))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> writer.compactDays(day.minusYears(2), day))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void whenRewardsExpireShouldStampThemAndEnableTtl() throws InterruptedException {
+        val settings = new DynamodbSettings();
+        settings.setRewardTtlDays(30);
+        val expiringWriter = new DynamodbAdapter(dynamodb, "tmp-tests", settings);
+        expiringWriter.checkAndCreateTables();
+
+        expiringWriter.rewardUser(Reward.builder()
+                .givenByUsername("andreas")
+                .rewardedUser("alex")
+                .amount(1)
+                .ts(1L)
+                .description("placeholder").build());
+
+        assertThat(dynamodb.describeTimeToLive(new DescribeTimeToLiveRequest().withTableName("tmp-tests-rewards"))
+                .getTimeToLiveDescription().getAttributeName()).isEqualTo("expiresAt");
+        Item item = new DynamoDB(dynamodb).getTable("tmp-tests-rewards").getItem("id", today(), "ts", 1L);
+        assertThat(item.getLong("expiresAt")).isGreaterThan(System.currentTimeMillis() / 1000 + 29 * 24 * 3600);
+    }
+
+    private static Item rawReward(LocalDate day, long ts, String from, String to, int amount) {
+        return new Item()
+                .withString("id", day.toString())
+                .withNumber("ts", ts)
+                .withNumber("amount", amount)
+                .withString("fromUser", from)
+                .withString("toUser", to)
+                .withString("description", "placeholder");
+    }
+
     private static String today() {
         return LocalDate.now(ZoneOffset.UTC).toString();
     }
@@ -254,6 +818,20 @@ public class DynamoDbWriterTest {
         assertOrderedDescending(andreasRewards);
     }
 
+    private AmazonDynamoDB throttledWhen(Predicate<Object> request) {
+        return (AmazonDynamoDB) Proxy.newProxyInstance(AmazonDynamoDB.class.getClassLoader(),
+                new Class<?>[]{AmazonDynamoDB.class}, (proxy, method, args) -> {
+                    if (args != null && args.length == 1 && request.test(args[0])) {
+                        throw new ProvisionedThroughputExceededException("throttled");
+                    }
+                    try {
+                        return method.invoke(dynamodb, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
     private void assertOrderedDescending(Collection<Reward> rewards) {
         rewards.stream()
                 .map(Reward::getTs)
@@ -0,0 +1,85 @@
+package biz.cosee.talks.serverless.dynamodb;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.*;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CapacityLimiterTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private final AtomicLong provisionedReads = new AtomicLong(10);
+    private final AtomicInteger describes = new AtomicInteger();
+    private final AtomicBoolean throttling = new AtomicBoolean();
+
+    private final CapacityLimiter limiter = new CapacityLimiter(100, 100, now::get);
+    private final AmazonDynamoDB client = limiter.wrap((AmazonDynamoDB) Proxy.newProxyInstance(
+            AmazonDynamoDB.class.getClassLoader(), new Class<?>[]{AmazonDynamoDB.class}, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "describeTable":
+                        describes.incrementAndGet();
+                        if (args[0].equals("missing")) {
+                            throw new ResourceNotFoundException("missing");
+                        }
+                        return new DescribeTableResult().withTable(new TableDescription()
+                                .withProvisionedThroughput(new ProvisionedThroughputDescription()
+                                        .withReadCapacityUnits(provisionedReads.get())
+                                        .withWriteCapacityUnits(0L)));
+                    case "getItem":
+                        if (throttling.get()) {
+                            throw new ProvisionedThroughputExceededException("throttled");
+                        }
+                        return new GetItemResult();
+                    default:
+                        return null;
+                }
+            }));
+
+    private static GetItemRequest get(String table) {
+        return new GetItemRequest().withTableName(table);
+    }
+
+    @Test
+    public void whenTableIsProvisionedShouldPaceToItsCapacity() {
+        client.getItem(get("rewards"));
+
+        assertThat(limiter.rate("rewards", true)).isEqualTo(10);
+        // on demand writes are not paced
+        client.putItem(new PutItemRequest().withTableName("rewards"));
+        assertThat(limiter.rate("rewards", false)).isEqualTo(0);
+    }
+
+    @Test
+    public void whenTableCannotBeDescribedShouldPaceToTheConfiguredCapacity() {
+        client.getItem(get("missing"));
+
+        assertThat(limiter.rate("missing", true)).isEqualTo(100);
+    }
+
+    @Test
+    public void whenThrottledShouldRereadTheProvisionedCapacity() {
+        client.getItem(get("rewards"));
+        provisionedReads.set(40);
+        throttling.set(true);
+
+        // described just now, no need to ask again
+        assertThatThrownBy(() -> client.getItem(get("rewards"))).isInstanceOf(ProvisionedThroughputExceededException.class);
+        assertThat(describes.get()).isEqualTo(1);
+        assertThat(limiter.rate("rewards", true)).isEqualTo(5);
+
+        now.set(TimeUnit.MINUTES.toNanos(2));
+        assertThatThrownBy(() -> client.getItem(get("rewards"))).isInstanceOf(ProvisionedThroughputExceededException.class);
+        assertThat(describes.get()).isEqualTo(2);
+
+        now.set(TimeUnit.MINUTES.toNanos(3));
+        assertThat(limiter.rate("rewards", true)).isEqualTo(40);
+    }
+}
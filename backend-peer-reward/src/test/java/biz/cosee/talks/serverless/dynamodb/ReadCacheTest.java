@@ -0,0 +1,92 @@
+package biz.cosee.talks.serverless.dynamodb;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ReadCacheTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private String load() {
+        return "value" + loads.incrementAndGet();
+    }
+
+    @Test
+    public void whenReadingWithinTtlShouldHitCache() {
+        ReadCache cache = new ReadCache(1000, 10, now::get);
+
+        assertThat(cache.get("users", this::load)).isEqualTo("value1");
+        now.set(999);
+        assertThat(cache.get("users", this::load)).isEqualTo("value1");
+
+        assertThat(cache.stats()).isEqualTo(new CacheStats(1, 1, 0, 1));
+    }
+
+    @Test
+    public void whenTtlExpiredShouldReload() {
+        ReadCache cache = new ReadCache(1000, 10, now::get);
+
+        cache.get("users", this::load);
+        now.set(1000);
+
+        assertThat(cache.get("users", this::load)).isEqualTo("value2");
+    }
+
+    @Test
+    public void whenInvalidatedShouldReload() {
+        ReadCache cache = new ReadCache(1000, 10, now::get);
+
+        cache.get("users", this::load);
+        cache.invalidate();
+
+        assertThat(cache.get("users", this::load)).isEqualTo("value2");
+    }
+
+    @Test
+    public void whenFullShouldEvictLeastRecentlyUsed() {
+        ReadCache cache = new ReadCache(1000, 2, now::get);
+
+        cache.get("a", this::load);
+        cache.get("b", this::load);
+        cache.get("a", this::load);
+        cache.get("c", this::load);
+
+        assertThat(cache.get("a", this::load)).isEqualTo("value1");
+        assertThat(cache.get("b", this::load)).isEqualTo("value4");
+        assertThat(cache.stats().getEvictions()).isEqualTo(2);
+    }
+
+    @Test
+    public void whenCallerModifiesCopyShouldKeepCachedValue() {
+        ReadCache cache = new ReadCache(1000, 10, now::get);
+
+        Supplier<List<String>> loader = () -> new ArrayList<>(Arrays.asList("alex"));
+        UnaryOperator<List<String>> copy = ArrayList::new;
+
+        cache.get("users", loader, copy).add("markus");
+        cache.get("users", loader, copy).clear();
+
+        List<String> cached = cache.get("users", loader, copy);
+        assertThat(cached).containsExactly("alex");
+        assertThat(cache.stats().getHits()).isEqualTo(2);
+    }
+
+    @Test
+    public void whenDisabledShouldAlwaysLoad() {
+        ReadCache cache = new ReadCache(0, 10, now::get);
+
+        cache.get("users", this::load);
+
+        assertThat(cache.get("users", this::load)).isEqualTo("value2");
+    }
+}
@@ -0,0 +1,92 @@
+package biz.cosee.talks.serverless.dynamodb;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class TokenBucketTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    @Test
+    public void whenWithinBurstShouldNotWait() {
+        TokenBucket bucket = new TokenBucket(10, now::get);
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(bucket.reserve()).isEqualTo(0);
+        }
+    }
+
+    @Test
+    public void whenConsumedMoreThanReservedShouldWaitForTheDifference() {
+        TokenBucket bucket = new TokenBucket(10, now::get);
+
+        bucket.reserve();
+        bucket.consume(15);
+
+        // 5 units behind at 10 units per second
+        assertThat(bucket.reserve()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(500));
+        // and the next one queues up behind the previous reservation
+        assertThat(bucket.reserve()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(600));
+    }
+
+    @Test
+    public void whenTimePassesShouldRefillUpToOneSecond() {
+        TokenBucket bucket = new TokenBucket(10, now::get);
+        bucket.reserve();
+        bucket.consume(30);
+
+        now.set(TimeUnit.SECONDS.toNanos(2));
+        assertThat(bucket.reserve()).isEqualTo(0);
+
+        now.set(TimeUnit.SECONDS.toNanos(60));
+        for (int i = 0; i < 11; i++) {
+            bucket.reserve();
+        }
+        assertThat(bucket.reserve()).isGreaterThan(0);
+    }
+
+    @Test
+    public void whenThrottledShouldHalveRateDownToMinimum() {
+        TokenBucket bucket = new TokenBucket(100, now::get);
+
+        bucket.throttled();
+        assertThat(bucket.rate()).isEqualTo(50);
+
+        for (int i = 0; i < 10; i++) {
+            bucket.throttled();
+        }
+        assertThat(bucket.rate()).isEqualTo(10);
+        assertThat(bucket.reserve()).isEqualTo(0);
+        assertThat(bucket.reserve()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(100));
+    }
+
+    @Test
+    public void whenNotThrottledShouldRecoverLinearly() {
+        TokenBucket bucket = new TokenBucket(100, now::get);
+        bucket.throttled();
+
+        now.set(TimeUnit.SECONDS.toNanos(4));
+        assertThat(bucket.rate()).isCloseTo(70, within(0.001));
+
+        now.set(TimeUnit.SECONDS.toNanos(60));
+        assertThat(bucket.rate()).isEqualTo(100);
+    }
+
+    @Test
+    public void whenResizedShouldCapRightAwayAndGrowIntoMore() {
+        TokenBucket bucket = new TokenBucket(100, now::get);
+
+        bucket.resize(20);
+        assertThat(bucket.rate()).isEqualTo(20);
+
+        bucket.resize(40);
+        assertThat(bucket.rate()).isEqualTo(20);
+        now.set(TimeUnit.SECONDS.toNanos(5));
+        assertThat(bucket.rate()).isCloseTo(30, within(0.001));
+    }
+}
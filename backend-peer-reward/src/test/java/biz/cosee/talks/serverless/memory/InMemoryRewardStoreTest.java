@@ -0,0 +1,154 @@
+package biz.cosee.talks.serverless.memory;
+
+import biz.cosee.talks.serverless.DailySummary;
+import biz.cosee.talks.serverless.Reward;
+import biz.cosee.talks.serverless.RewardPage;
+import biz.cosee.talks.serverless.RewardStore;
+import biz.cosee.talks.serverless.User;
+import lombok.val;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+import static java.util.Collections.singletonList;
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class InMemoryRewardStoreTest {
+
+    private final InMemoryRewardStore store = new InMemoryRewardStore();
+
+    private static Reward reward(String from, String to, int amount, long ts) {
+        return Reward.builder()
+                .givenByUsername(from)
+                .rewardedUser(to)
+                .amount(amount)
+                .ts(ts)
+                .description("placeholder")
+                .build();
+    }
+
+    @Test
+    public void whenRewardingShouldCountReceivedAndGivenCoins() {
+        store.rewardUser(reward("andreas", "alex", 100, 1000));
+        store.rewardUser(reward("andreas", "alex", 5, 2000));
+
+        val users = store.retrieveUsers(singletonList(User.builder().username("andreas").build()));
+        val alex = store.retrieveUsers(singletonList(User.builder().username("alex").build())).get(0);
+
+        assertThat(users).hasSize(1);
+        assertThat(users.get(0).getRewards()).isEqualTo(0);
+        assertThat(users.get(0).getCoinsGiven()).containsEntry("alex", 105).hasSize(1);
+        assertThat(alex.getRewards()).isEqualTo(105);
+        assertThat(alex.getCoinsGiven()).isEmpty();
+        assertThat(store.retrieveUsers()).extracting(User::getUsername).containsOnly("andreas", "alex");
+        assertThat(store.retrieveUserSummaries()).allMatch(user -> user.getCoinsGiven() == null);
+    }
+
+    @Test
+    public void whenRewardsShareAMillisecondShouldKeepAndCountBoth() {
+        store.rewardUser(reward("andreas", "alex", 10, 1000));
+        store.rewardUser(reward("markus", "alex", 5, 1000));
+
+        val alex = store.retrieveUsers(singletonList(User.builder().username("alex").build())).get(0);
+
+        assertThat(store.retrieveRewardsSince(0L)).extracting(Reward::getTs).containsExactly(1001L, 1000L);
+        assertThat(store.retrieveRewardsContaining(User.builder().username("alex").build())).hasSize(2);
+        assertThat(alex.getRewards()).isEqualTo(15);
+    }
+
+    @Test
+    public void whenRetrievingSinceShouldReturnNewestFirstAndIncludeTheBoundary() {
+        store.rewardUser(reward("a", "b", 1, 1000));
+        store.rewardUser(reward("a", "b", 1, 3000));
+        store.rewardUser(reward("a", "b", 1, 2000));
+
+        assertThat(store.retrieveRewardsSince(2000L)).extracting(Reward::getTs).containsExactly(3000L, 2000L);
+        assertThat(store.streamRewardsSince(0L).map(Reward::getTs).collect(toList())).containsExactly(3000L, 2000L, 1000L);
+        assertThat(store.retrieveRewardsSince(0L).get(0).getId()).isEqualTo("1970-01-01");
+    }
+
+    @Test
+    public void whenPagingShouldHandOutEveryRewardOnce() {
+        long now = Instant.now().toEpochMilli();
+        store.rewardUsers(IntStream.range(0, 25).mapToObj(i -> reward("a", "b", 1, now - i)).collect(toList()));
+
+        List<Long> seen = new ArrayList<>();
+        String cursor = null;
+        do {
+            RewardPage page = store.retrieveRewardsLast(10, cursor);
+            page.getRewards().forEach(reward -> seen.add(reward.getTs()));
+            cursor = page.getCursor();
+        } while (cursor != null);
+
+        assertThat(seen).hasSize(25).doesNotHaveDuplicates();
+        assertThat(seen).isSortedAccordingTo((a, b) -> Long.compare(b, a));
+        assertThat(store.retrieveRewardsSince(now - 4, null, 5).getCursor()).isNull();
+    }
+
+    @Test
+    public void whenRetrievingRewardsContainingShouldListRewardsToOneselfOnce() {
+        store.rewardUser(reward("alex", "alex", 1, 1000));
+        store.rewardUser(reward("andreas", "alex", 1, 2000));
+        store.rewardUser(reward("alex", "markus", 1, 3000));
+        store.rewardUser(reward("andreas", "markus", 1, 4000));
+
+        val user = User.builder().username("alex").build();
+        assertThat(store.retrieveRewardsContaining(user)).extracting(Reward::getTs).containsExactly(3000L, 2000L, 1000L);
+        assertThat(store.retrieveRewardsContaining(user, 1)).extracting(Reward::getTs).containsExactly(3000L);
+        assertThat(store.retrieveRewardsContaining(User.builder().username("nobody").build(), 10)).isEmpty();
+    }
+
+    @Test
+    public void whenRetrievingDailySummariesShouldListEveryDayWithPairTotals() {
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        long yesterday = today.minusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+        store.rewardUser(reward("b", "alex", 10, yesterday));
+        store.rewardUser(reward("a", "alex", 5, yesterday + 1));
+        store.rewardUser(reward("b", "alex", 1, yesterday + 2));
+
+        val days = store.retrieveDailySummaries(today.minusDays(2), today.plusDays(3));
+
+        assertThat(days).extracting(DailySummary::getDay)
+                .containsExactly(today.minusDays(2).toString(), today.minusDays(1).toString(), today.toString());
+        assertThat(days.get(1).getCount()).isEqualTo(3);
+        assertThat(days.get(1).getAmount()).isEqualTo(16);
+        assertThat(days.get(1).getTotals()).containsExactly(
+                new DailySummary.PairTotal("a", "alex", 1, 5),
+                new DailySummary.PairTotal("b", "alex", 2, 11));
+        assertThat(days.get(2).getTotals()).isEmpty();
+    }
+
+    @Test
+    public void whenRetrievingLeaderboardShouldRankReceiversPerPeriod() {
+        long ts = Instant.now().toEpochMilli();
+        store.rewardUser(reward("a", "alex", 10, ts));
+        store.rewardUser(reward("a", "markus", 30, ts + 1));
+        store.rewardUser(reward("a", "michi", 20, ts + 2));
+
+        val month = YearMonth.from(Instant.ofEpochMilli(ts).atZone(ZoneOffset.UTC)).toString();
+        assertThat(store.retrieveLeaderboard(RewardStore.ALL_TIME, 2)).extracting(User::getUsername).containsExactly("markus", "michi");
+        assertThat(store.retrieveLeaderboard(month, 3)).extracting(User::getRewards).containsExactly(30, 20, 10);
+        assertThat(store.retrieveLeaderboard("1999-01", 3)).isEmpty();
+    }
+
+    @Test
+    public void whenWritingConcurrentlyShouldNotLoseUpdates() {
+        val writers = IntStream.range(0, 8)
+                .mapToObj(writer -> CompletableFuture.runAsync(() -> IntStream.range(0, 1000)
+                        .forEach(i -> store.rewardUser(reward("giver" + writer, "alex", 1, writer * 1000L + i)))))
+                .collect(toList());
+        writers.forEach(CompletableFuture::join);
+
+        val alex = store.retrieveUserSummaries(singletonList(User.builder().username("alex").build())).get(0);
+        assertThat(alex.getRewards()).isEqualTo(8000);
+        assertThat(store.retrieveRewardsSince(0L)).hasSize(8000);
+    }
+}
@@ -0,0 +1,90 @@
+package biz.cosee.talks.serverless.metrics;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+import static org.assertj.core.groups.Tuple.tuple;
+
+public class MetricsTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private final Metrics metrics = new Metrics(1000, now::get);
+
+    @Test
+    public void whenRecordingLatenciesShouldReportPercentilesWithinOneBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int millis = 1; millis <= 100; millis++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+
+        assertThat(histogram.count()).isEqualTo(100);
+        assertThat(histogram.percentileMillis(0.50)).isBetween(50.0, 50.0 * 1.19);
+        assertThat(histogram.percentileMillis(0.99)).isBetween(99.0, 100.0);
+        assertThat(histogram.maxMillis()).isEqualTo(100.0, within(0.001));
+    }
+
+    @Test
+    public void whenCallFailsShouldCountErrorAndRethrow() {
+        assertThatThrownBy(() -> metrics.time("rewardUser", () -> {
+            throw new IllegalStateException("boom");
+        })).isInstanceOf(IllegalStateException.class);
+        metrics.time("rewardUser", () -> "ok");
+
+        OperationStats stats = metrics.snapshot().get(0);
+        assertThat(stats.getOperation()).isEqualTo("rewardUser");
+        assertThat(stats.getCount()).isEqualTo(2);
+        assertThat(stats.getErrors()).isEqualTo(1);
+    }
+
+    @Test
+    public void whenRequestRunsOnPoolThreadShouldBookOntoSubmittingOperation() throws Exception {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            metrics.time("retrieveUsers", () -> CompletableFuture
+                    .runAsync(() -> metrics.recordRequest(0.5, 0, 1, 1), metrics.propagating(pool))
+                    .get());
+            CompletableFuture.runAsync(() -> metrics.recordRequest(0, 1, 0, 0), pool).get();
+        } finally {
+            pool.shutdown();
+        }
+
+        assertThat(metrics.snapshot())
+                .filteredOn(stats -> stats.getOperation().equals("retrieveUsers"))
+                .extracting(OperationStats::getRequests, OperationStats::getRcu, OperationStats::getRetries, OperationStats::getThrottles)
+                .containsExactly(tuple(1L, 0.5, 1L, 1L));
+        assertThat(metrics.snapshot())
+                .filteredOn(stats -> stats.getOperation().equals("unattributed"))
+                .extracting(OperationStats::getWcu)
+                .containsExactly(1.0);
+    }
+
+    @Test
+    public void whenWindowElapsedShouldFlushAndStartEmpty() {
+        metrics.time("retrieveLeaderboard", () -> null);
+
+        now.set(999);
+        metrics.flushIfDue();
+        assertThat(metrics.snapshot()).hasSize(1);
+
+        now.set(1000);
+        metrics.flushIfDue();
+        assertThat(metrics.snapshot()).isEmpty();
+    }
+
+    @Test
+    public void whenSerialisingShouldWriteOneFlatJsonObject() {
+        OperationStats stats = new OperationStats("retrieveRewardsLast", 3, 0, 1.234, 5, 6, 7, 0.5, 0, 2, 1, 0);
+
+        assertThat(Metrics.toJson(stats)).isEqualTo("{\"metric\":\"operation\",\"op\":\"retrieveRewardsLast\",\"count\":3,"
+                + "\"errors\":0,\"p50Ms\":1.23,\"p95Ms\":5.0,\"p99Ms\":6.0,\"maxMs\":7.0,\"rcu\":0.5,\"wcu\":0.0,"
+                + "\"requests\":2,\"retries\":1,\"throttles\":0}");
+    }
+}
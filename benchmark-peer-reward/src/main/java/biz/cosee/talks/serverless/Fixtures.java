@@ -0,0 +1,84 @@
+package biz.cosee.talks.serverless;
+
+import com.amazonaws.services.dynamodbv2.document.Item;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static java.util.stream.Collectors.toList;
+
+// items and models shaped like production data, seeded so every run measures the same bytes
+public class Fixtures {
+
+    private static final String DESCRIPTION = "Thanks for reviewing the deployment pipeline and catching the missing rollback step";
+
+    private Fixtures() {
+    }
+
+    public static Item rewardItem(int i) {
+        long ts = Instant.now().toEpochMilli() - i * 1000L;
+        return new Item()
+                .withString("id", LocalDate.now(ZoneOffset.UTC).toString())
+                .withNumber("ts", ts)
+                .withNumber("amount", 1 + i % 10)
+                .withString("fromUser", username(i))
+                .withString("toUser", username(i + 1))
+                .withString("description", DESCRIPTION);
+    }
+
+    // users written before the coins table carry one rewardsFor:<receiver> attribute per receiver
+    public static Item userItem(int legacyReceivers) {
+        Item item = new Item()
+                .withString("username", username(0))
+                .withNumber("totalRewards", 4711);
+        for (int i = 0; i < legacyReceivers; i++) {
+            item.withNumber("rewardsFor:" + username(i + 1), 1 + i % 100);
+        }
+        return item;
+    }
+
+    public static List<Reward> rewards(int count) {
+        Random random = new Random(count);
+        List<Reward> rewards = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            rewards.add(Reward.builder()
+                    .id(LocalDate.now(ZoneOffset.UTC).toString())
+                    .ts(Instant.now().toEpochMilli() - i * 1000L)
+                    .givenByUsername(username(random.nextInt(count)))
+                    .rewardedUser(username(random.nextInt(count)))
+                    .amount(1 + random.nextInt(10))
+                    .description(DESCRIPTION)
+                    .build());
+        }
+        return rewards;
+    }
+
+    public static List<User> users(int count, int receiversPerUser) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> User.builder()
+                        .username(username(i))
+                        .rewards(i * 7)
+                        .coinsGiven(coins(receiversPerUser))
+                        .build())
+                .collect(toList());
+    }
+
+    private static Map<String, Integer> coins(int receivers) {
+        Map<String, Integer> coins = new HashMap<>();
+        for (int i = 0; i < receivers; i++) {
+            coins.put(username(i), 1 + i % 100);
+        }
+        return coins;
+    }
+
+    public static String username(int i) {
+        return "user-" + i;
+    }
+}
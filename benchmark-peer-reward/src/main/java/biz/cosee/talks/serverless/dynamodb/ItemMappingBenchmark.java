@@ -0,0 +1,41 @@
+package biz.cosee.talks.serverless.dynamodb;
+
+import biz.cosee.talks.serverless.Fixtures;
+import biz.cosee.talks.serverless.Reward;
+import biz.cosee.talks.serverless.User;
+import com.amazonaws.services.dynamodbv2.document.Item;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// legacy users still carry their coins as rewardsFor:* attributes, which itemToUser parses one by one
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ItemMappingBenchmark {
+
+    @Param({"0", "100", "5000"})
+    private int legacyReceivers;
+
+    private Item userItem;
+    private Item rewardItem;
+
+    @Setup
+    public void setUp() {
+        userItem = Fixtures.userItem(legacyReceivers);
+        rewardItem = Fixtures.rewardItem(0);
+    }
+
+    @Benchmark
+    public User itemToUser() {
+        return DynamodbAdapter.itemToUser(userItem);
+    }
+
+    @Benchmark
+    public Reward itemToReward() {
+        return DynamodbAdapter.itemToReward(rewardItem);
+    }
+}
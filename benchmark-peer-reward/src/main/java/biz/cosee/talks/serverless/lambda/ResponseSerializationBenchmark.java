@@ -0,0 +1,64 @@
+package biz.cosee.talks.serverless.lambda;
+
+import biz.cosee.talks.serverless.Fixtures;
+import biz.cosee.talks.serverless.lambda.rewards.RewardResponse;
+import biz.cosee.talks.serverless.lambda.users.UserResponse;
+import com.amazonaws.util.json.Jackson;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+// bodies are serialised the way the handlers do it, through the SDK's shared ObjectMapper
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseSerializationBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Rewards {
+
+        // a default page and a full day of rewards
+        @Param({"100", "2000"})
+        private int rewards;
+
+        private RewardResponse response;
+
+        @Setup
+        public void setUp() {
+            response = RewardResponse.builder()
+                    .rewards(Fixtures.rewards(rewards))
+                    .ts(Instant.now().toEpochMilli())
+                    .build();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Users {
+
+        // every user has given coins to this many others
+        @Param({"10", "1000"})
+        private int receiversPerUser;
+
+        private UserResponse response;
+
+        @Setup
+        public void setUp() {
+            response = UserResponse.builder()
+                    .users(Fixtures.users(50, receiversPerUser))
+                    .build();
+        }
+    }
+
+    @Benchmark
+    public String rewardResponse(Rewards rewards) {
+        return Jackson.toJsonString(rewards.response);
+    }
+
+    @Benchmark
+    public String userResponse(Users users) {
+        return Jackson.toJsonString(users.response);
+    }
+}
@@ -0,0 +1,70 @@
+package biz.cosee.talks.serverless.lambda.handlers;
+
+import biz.cosee.talks.serverless.Fixtures;
+import biz.cosee.talks.serverless.lambda.generated.LambdaProxyRequest;
+import biz.cosee.talks.serverless.lambda.generated.LambdaProxyResponse;
+import biz.cosee.talks.serverless.lambda.rewards.RewardResponse;
+import biz.cosee.talks.serverless.lambda.users.UserResponse;
+import com.amazonaws.util.json.Jackson;
+import lombok.extern.slf4j.Slf4j;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+// what compressing a response body costs in Lambda CPU time, the sizes it saves are logged once per trial
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+@Slf4j
+public class ResponseCompressionBenchmark {
+
+    // a default page, a full day of rewards and the user directory with coinsGiven
+    @Param({"rewards-100", "rewards-2000", "users-1000"})
+    private String body;
+
+    // identity is the baseline, the JSON as it is sent today
+    @Param({"identity", "gzip-1", "gzip-6", "deflate-1"})
+    private String encoding;
+
+    private String json;
+    private LambdaProxyRequest request;
+    private ResponseCompression compression;
+
+    @Setup
+    public void setUp() {
+        json = body.equals("users-1000")
+                ? Jackson.toJsonString(UserResponse.builder().users(Fixtures.users(50, 1000)).build())
+                : Jackson.toJsonString(RewardResponse.builder()
+                        .rewards(Fixtures.rewards(Integer.parseInt(body.substring("rewards-".length()))))
+                        .ts(Instant.now().toEpochMilli())
+                        .build());
+
+        request = new LambdaProxyRequest();
+        if (!encoding.equals("identity")) {
+            String[] tokenAndLevel = encoding.split("-");
+            request.setHeaders(Collections.singletonMap("Accept-Encoding", tokenAndLevel[0]));
+            compression = new ResponseCompression(1024, Integer.parseInt(tokenAndLevel[1]));
+        } else {
+            compression = new ResponseCompression(1024, 1);
+        }
+
+        LambdaProxyResponse response = compress();
+        log.info("{} {}: {} bytes of JSON, {} bytes sent", body, encoding,
+                json.getBytes(StandardCharsets.UTF_8).length, response.getBody().length());
+    }
+
+    @Benchmark
+    public LambdaProxyResponse compress() {
+        return compression.compress(request, LambdaProxyResponse.builder()
+                .statusCode(200)
+                .headers(CorsHeaders.build())
+                .body(json)
+                .build());
+    }
+}
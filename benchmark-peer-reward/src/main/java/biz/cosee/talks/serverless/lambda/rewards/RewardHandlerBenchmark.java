@@ -0,0 +1,118 @@
+package biz.cosee.talks.serverless.lambda.rewards;
+
+import biz.cosee.talks.serverless.Fixtures;
+import biz.cosee.talks.serverless.RewardStore;
+import biz.cosee.talks.serverless.dynamodb.DynamodbAdapter;
+import biz.cosee.talks.serverless.dynamodb.DynamodbSettings;
+import biz.cosee.talks.serverless.lambda.generated.LambdaProxyRequest;
+import biz.cosee.talks.serverless.lambda.generated.LambdaProxyResponse;
+import biz.cosee.talks.serverless.lambda.handlers.CorsHeaders;
+import biz.cosee.talks.serverless.lambda.handlers.TableProvisioning;
+import biz.cosee.talks.serverless.memory.InMemoryRewardStore;
+import com.amazonaws.services.dynamodbv2.AbstractAmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.document.ItemUtils;
+import com.amazonaws.services.dynamodbv2.model.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static java.util.stream.Collectors.toList;
+
+// handler dispatch end to end against a DynamoDB that answers from memory, so only our own code is measured
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RewardHandlerBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Handler {
+
+        @Param({"20", "100"})
+        private int limit;
+
+        // memory is the baseline, the difference is what the DynamoDB adapter adds on top of the handler
+        @Param({"dynamodb", "memory"})
+        private String engine;
+
+        private RewardHandler handler;
+        private LambdaProxyRequest latest;
+        private LambdaProxyRequest post;
+
+        @Setup
+        public void setUp() {
+            // the read cache stays disabled, every GET maps the items again. Nothing to pace against either.
+            DynamodbSettings settings = new DynamodbSettings();
+            settings.setPaceToProvisionedCapacity(false);
+            RewardStore store = engine.equals("memory")
+                    ? inMemoryStore(limit + 1)
+                    : new DynamodbAdapter(new InMemoryDynamoDB(limit + 1), "bench", settings);
+            handler = new RewardHandler(store, new TableProvisioning(store, TableProvisioning.Mode.NONE));
+
+            latest = new LambdaProxyRequest();
+            latest.setHttpMethod("GET");
+            latest.setQueryStringParameters(Collections.singletonMap("limit", String.valueOf(limit)));
+
+            post = new LambdaProxyRequest();
+            post.setHttpMethod("POST");
+            post.setBody("{\"givenByUsername\":\"user-1\",\"rewardedUser\":\"user-2\",\"amount\":3,"
+                    + "\"description\":\"Thanks for reviewing the deployment pipeline\"}");
+        }
+    }
+
+    @Benchmark
+    public LambdaProxyResponse getLatest(Handler state) {
+        return state.handler.handleRequest(state.latest, null);
+    }
+
+    @Benchmark
+    public LambdaProxyResponse postReward(Handler state) {
+        return state.handler.handleRequest(state.post, null);
+    }
+
+    @Benchmark
+    public Map<String, String> corsHeaders() {
+        return CorsHeaders.build();
+    }
+
+    private static InMemoryRewardStore inMemoryStore(int rewards) {
+        InMemoryRewardStore store = new InMemoryRewardStore();
+        store.rewardUsers(Fixtures.rewards(rewards));
+        return store;
+    }
+
+    private static class InMemoryDynamoDB extends AbstractAmazonDynamoDB {
+
+        private final List<Map<String, AttributeValue>> rewards;
+
+        private InMemoryDynamoDB(int rewards) {
+            this.rewards = IntStream.range(0, rewards)
+                    .mapToObj(i -> ItemUtils.toAttributeValues(Fixtures.rewardItem(i)))
+                    .collect(toList());
+        }
+
+        @Override
+        public QueryResult query(QueryRequest request) {
+            // no version markers, every request reads the rewards
+            if (request.getTableName().endsWith("-leaderboard")) {
+                return new QueryResult().withItems(Collections.emptyList()).withCount(0);
+            }
+            return new QueryResult().withItems(rewards).withCount(rewards.size());
+        }
+
+        @Override
+        public TransactWriteItemsResult transactWriteItems(TransactWriteItemsRequest request) {
+            return new TransactWriteItemsResult();
+        }
+
+        @Override
+        public UpdateItemResult updateItem(UpdateItemRequest request) {
+            return new UpdateItemResult();
+        }
+    }
+}
@@ -17,5 +17,6 @@ public class LambdaProxyRequest {
     private Map<String, String> stageVariables;
     private RequestContext requestContext;
     private String body;
+    private Boolean isBase64Encoded;
 
 }
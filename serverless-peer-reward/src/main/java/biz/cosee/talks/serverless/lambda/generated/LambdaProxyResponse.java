@@ -1,5 +1,6 @@
 package biz.cosee.talks.serverless.lambda.generated;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.Builder;
 import lombok.Data;
 
@@ -12,5 +13,7 @@ public class LambdaProxyResponse {
     private int statusCode;
     private Map<String, String> headers;
     private String body;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Boolean isBase64Encoded;
 
 }
@@ -0,0 +1,61 @@
+package biz.cosee.talks.serverless.lambda.handlers;
+
+import biz.cosee.talks.serverless.RewardStore;
+import biz.cosee.talks.serverless.dynamodb.DynamodbAdapter;
+import biz.cosee.talks.serverless.dynamodb.DynamodbSettings;
+import biz.cosee.talks.serverless.memory.InMemoryRewardStore;
+import biz.cosee.talks.serverless.metrics.Metrics;
+import com.amazonaws.client.builder.AwsClientBuilder;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClientBuilder;
+import lombok.val;
+
+import java.util.Optional;
+
+public class AdapterFactory {
+
+    // shared by all handlers of the JVM, so a local run sees its own writes across endpoints
+    private static final InMemoryRewardStore IN_MEMORY = new InMemoryRewardStore();
+
+    // STORAGE_ENGINE=memory serves everything from the container without AWS, for local runs and load tests
+    public static RewardStore storeFromEnvironment() {
+        if ("memory".equalsIgnoreCase(System.getenv("STORAGE_ENGINE"))) {
+            return IN_MEMORY;
+        }
+        return fromEnvironment();
+    }
+
+    public static DynamodbAdapter fromEnvironment() {
+        val builder = AmazonDynamoDBClientBuilder.standard()
+                .withMetricsCollector(Metrics.global().requestMetricCollector());
+        // e.g. http://localhost:8000 for DynamoDB Local
+        Optional.ofNullable(System.getenv("DYNAMODB_ENDPOINT")).ifPresent(endpoint -> builder.withEndpointConfiguration(
+                new AwsClientBuilder.EndpointConfiguration(endpoint, Optional.ofNullable(System.getenv("AWS_REGION")).orElse("us-east-1"))));
+        val client = builder.build();
+
+        // TODO: Error Handling
+        val tablePrefix = System.getenv("TABLE_PREFIX");
+
+        val settings = new DynamodbSettings();
+        intFromEnvironment("USER_SCAN_SEGMENTS").ifPresent(settings::setUserScanSegments);
+        intFromEnvironment("MAX_DAY_PARTITIONS_PER_QUERY").ifPresent(settings::setMaxDayPartitionsPerQuery);
+        intFromEnvironment("LATEST_LOOKBACK_DAYS").ifPresent(settings::setLatestLookbackDays);
+        intFromEnvironment("REWARD_WRITE_SHARDS").ifPresent(settings::setRewardWriteShards);
+        intFromEnvironment("USER_COUNTER_SHARDS").ifPresent(settings::setUserCounterShards);
+        intFromEnvironment("COMPACTION_LOOKBACK_DAYS").ifPresent(settings::setCompactionLookbackDays);
+        intFromEnvironment("REWARD_TTL_DAYS").ifPresent(settings::setRewardTtlDays);
+        intFromEnvironment("MAX_SUMMARY_DAYS").ifPresent(settings::setMaxSummaryDays);
+        intFromEnvironment("DAY_FAN_OUT").ifPresent(settings::setDayFanOut);
+        intFromEnvironment("READ_CAPACITY_UNITS").ifPresent(settings::setReadCapacityUnits);
+        intFromEnvironment("WRITE_CAPACITY_UNITS").ifPresent(settings::setWriteCapacityUnits);
+        Optional.ofNullable(System.getenv("PACE_TO_PROVISIONED_CAPACITY")).map(Boolean::parseBoolean)
+                .ifPresent(settings::setPaceToProvisionedCapacity);
+        intFromEnvironment("CACHE_TTL_MILLIS").ifPresent(settings::setCacheTtlMillis);
+        intFromEnvironment("CACHE_MAX_ENTRIES").ifPresent(settings::setCacheMaxEntries);
+
+        return new DynamodbAdapter(client, tablePrefix, settings);
+    }
+
+    private static Optional<Integer> intFromEnvironment(String name) {
+        return Optional.ofNullable(System.getenv(name)).map(Integer::parseInt);
+    }
+}
@@ -0,0 +1,52 @@
+package biz.cosee.talks.serverless.lambda.handlers;
+
+import biz.cosee.talks.serverless.metrics.Metrics;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+@Slf4j
+public class ColdStart {
+
+    private final String handler;
+    private final long initStart = System.nanoTime();
+    private final AtomicBoolean firstInvocation = new AtomicBoolean(true);
+
+    private volatile long initMillis;
+
+    public ColdStart(Class<?> handler) {
+        this.handler = handler.getSimpleName();
+    }
+
+    public void initialized() {
+        initMillis = millisSince(initStart);
+    }
+
+    public <T> T track(Supplier<T> invocation) {
+        if (!firstInvocation.compareAndSet(true, false)) {
+            return timed(invocation);
+        }
+
+        long invocationStart = System.nanoTime();
+        try {
+            return timed(invocation);
+        } finally {
+            log.info("coldStart handler={} initMs={} firstInvocationMs={}", handler, initMillis, millisSince(invocationStart));
+        }
+    }
+
+    // the handler is the outer operation, adapter calls below it are recorded on their own
+    private <T> T timed(Supplier<T> invocation) {
+        try {
+            return Metrics.global().time(handler, invocation::get);
+        } finally {
+            Metrics.global().flushIfDue();
+        }
+    }
+
+    private static long millisSince(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+}
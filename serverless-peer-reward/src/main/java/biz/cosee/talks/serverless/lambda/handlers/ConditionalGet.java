@@ -0,0 +1,46 @@
+package biz.cosee.talks.serverless.lambda.handlers;
+
+import biz.cosee.talks.serverless.lambda.generated.LambdaProxyRequest;
+import biz.cosee.talks.serverless.lambda.generated.LambdaProxyResponse;
+
+import java.util.Map;
+import java.util.stream.Stream;
+
+// ETags are the store's version, read ahead of the data: a response may be newer than its ETag, never older.
+// They are weak, the bodies also carry the time they were built at.
+public class ConditionalGet {
+
+    private static final String IF_NONE_MATCH = "If-None-Match";
+
+    public static String etag(long version) {
+        return "W/\"" + version + "\"";
+    }
+
+    public static boolean notModified(LambdaProxyRequest request, String etag) {
+        String ifNoneMatch = Headers.get(request.getHeaders(), IF_NONE_MATCH);
+        if (ifNoneMatch == null) {
+            return false;
+        }
+
+        return Stream.of(ifNoneMatch.split(","))
+                .map(String::trim)
+                .anyMatch(candidate -> candidate.equals("*") || opaque(candidate).equals(opaque(etag)));
+    }
+
+    public static LambdaProxyResponse notModifiedResponse(String etag) {
+        return LambdaProxyResponse.builder().statusCode(304).headers(headers(etag)).body("").build();
+    }
+
+    // no-cache keeps browsers asking every time, with the ETag that is one small read instead of the whole body
+    public static Map<String, String> headers(String etag) {
+        Map<String, String> headers = CorsHeaders.build();
+        headers.put("ETag", etag);
+        headers.put("Cache-Control", "no-cache");
+        return headers;
+    }
+
+    // weak comparison, as If-None-Match asks for
+    private static String opaque(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+}
@@ -0,0 +1,18 @@
+package biz.cosee.talks.serverless.lambda.handlers;
+
+import java.util.Map;
+
+// API Gateway passes header names as the client sent them
+class Headers {
+
+    static String get(Map<String, String> headers, String name) {
+        if (headers == null) {
+            return null;
+        }
+        return headers.entrySet().stream()
+                .filter(header -> header.getKey().equalsIgnoreCase(name))
+                .map(Map.Entry::getValue)
+                .findFirst()
+                .orElse(null);
+    }
+}
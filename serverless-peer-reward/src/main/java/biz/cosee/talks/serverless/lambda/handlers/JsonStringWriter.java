@@ -0,0 +1,43 @@
+package biz.cosee.talks.serverless.lambda.handlers;
+
+import java.io.IOException;
+import java.io.Writer;
+
+// escapes everything written to it as the content of a JSON string, e.g. a JSON document nested as proxy body
+class JsonStringWriter extends Writer {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Writer target;
+
+    JsonStringWriter(Writer target) {
+        this.target = target;
+    }
+
+    @Override
+    public void write(char[] chars, int offset, int length) throws IOException {
+        for (int i = offset; i < offset + length; i++) {
+            char c = chars[i];
+            if (c == '"' || c == '\\') {
+                target.write('\\');
+                target.write(c);
+            } else if (c < 0x20) {
+                target.write("\\u00");
+                target.write(HEX[c >> 4]);
+                target.write(HEX[c & 0xF]);
+            } else {
+                target.write(c);
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        target.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+}
@@ -0,0 +1,80 @@
+package biz.cosee.talks.serverless.lambda.handlers;
+
+import biz.cosee.talks.serverless.lambda.generated.LambdaProxyRequest;
+import com.amazonaws.util.json.Jackson;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+// reads only the proxy fields the handlers use and skips the request context, identity and the like
+public class ProxyRequestReader {
+
+    public static LambdaProxyRequest read(InputStream input) throws IOException {
+        LambdaProxyRequest request = new LambdaProxyRequest();
+
+        try (JsonParser parser = Jackson.getObjectMapper().getFactory().createParser(input)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Expected a proxy request object");
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+
+                switch (field) {
+                    case "httpMethod":
+                        request.setHttpMethod(parser.getValueAsString());
+                        break;
+                    case "path":
+                        request.setPath(parser.getValueAsString());
+                        break;
+                    case "body":
+                        request.setBody(parser.getValueAsString());
+                        break;
+                    case "isBase64Encoded":
+                        request.setIsBase64Encoded(parser.getValueAsBoolean());
+                        break;
+                    case "headers":
+                        request.setHeaders(readStringMap(parser));
+                        break;
+                    case "queryStringParameters":
+                        request.setQueryStringParameters(readStringMap(parser));
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+        }
+
+        return decoded(request);
+    }
+
+    // with binaryMediaTypes set on the API, API Gateway hands over JSON bodies base64 encoded as well
+    public static LambdaProxyRequest decoded(LambdaProxyRequest request) {
+        if (Boolean.TRUE.equals(request.getIsBase64Encoded()) && request.getBody() != null) {
+            request.setBody(new String(Base64.getDecoder().decode(request.getBody()), StandardCharsets.UTF_8));
+            request.setIsBase64Encoded(false);
+        }
+        return request;
+    }
+
+    private static Map<String, String> readStringMap(JsonParser parser) throws IOException {
+        if (parser.getCurrentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+
+        Map<String, String> values = new HashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String key = parser.getCurrentName();
+            parser.nextToken();
+            values.put(key, parser.getValueAsString());
+        }
+        return values;
+    }
+}
@@ -0,0 +1,171 @@
+package biz.cosee.talks.serverless.lambda.handlers;
+
+import biz.cosee.talks.serverless.lambda.generated.LambdaProxyRequest;
+import biz.cosee.talks.serverless.lambda.generated.LambdaProxyResponse;
+import biz.cosee.talks.serverless.lambda.handlers.ResponseCompression.Encoding;
+import com.amazonaws.util.json.Jackson;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+public class ProxyResponseWriter {
+
+    public interface BodyWriter {
+        void write(JsonGenerator body) throws IOException;
+    }
+
+    public static void write(OutputStream output, LambdaProxyResponse response) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        writer.write(Jackson.toJsonString(response));
+        writer.flush();
+    }
+
+    // the proxy body is a string, so the JSON body is escaped on the fly instead of being built up front
+    public static void writeJson(OutputStream output, int statusCode, Map<String, String> headers, BodyWriter bodyWriter)
+            throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        writer.write("{\"statusCode\":");
+        writer.write(Integer.toString(statusCode));
+        writer.write(",\"headers\":");
+        writer.write(Jackson.toJsonString(headers));
+        writer.write(",\"body\":\"");
+
+        JsonGenerator body = Jackson.getObjectMapper().getFactory().createGenerator(new JsonStringWriter(writer));
+        body.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        bodyWriter.write(body);
+        body.close();
+
+        writer.write("\"}");
+        writer.flush();
+    }
+
+    // as above, but compressed once the body outgrows the compression threshold. Whether it did is only known at the
+    // end, so headers and isBase64Encoded follow the body.
+    public static void writeJson(OutputStream output, int statusCode, Map<String, String> headers,
+                                 LambdaProxyRequest request, ResponseCompression compression, BodyWriter bodyWriter)
+            throws IOException {
+        Map<String, String> responseHeaders = new HashMap<>(headers);
+        if (compression.isEnabled()) {
+            responseHeaders.put("Vary", "Accept-Encoding");
+        }
+
+        Optional<Encoding> encoding = compression.negotiate(request);
+        if (!encoding.isPresent()) {
+            writeJson(output, statusCode, responseHeaders, bodyWriter);
+            return;
+        }
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        writer.write("{\"statusCode\":");
+        writer.write(Integer.toString(statusCode));
+        writer.write(",\"body\":\"");
+        writer.flush();
+
+        CompressingBody compressingBody = new CompressingBody(output, compression, encoding.get());
+        JsonGenerator body = Jackson.getObjectMapper().getFactory().createGenerator(compressingBody, JsonEncoding.UTF8);
+        body.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        bodyWriter.write(body);
+        body.close();
+        boolean compressed = compressingBody.finish(writer);
+
+        if (compressed) {
+            responseHeaders.put("Content-Encoding", encoding.get().getToken());
+        }
+        writer.write("\",\"headers\":");
+        writer.write(Jackson.toJsonString(responseHeaders));
+        if (compressed) {
+            writer.write(",\"isBase64Encoded\":true");
+        }
+        writer.write("}");
+        writer.flush();
+    }
+
+    // holds the body back until it reaches minBytes, from there on it is compressed and base64 encoded straight into
+    // the response
+    private static class CompressingBody extends OutputStream {
+
+        private final OutputStream output;
+        private final ResponseCompression compression;
+        private final Encoding encoding;
+
+        private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+        private OutputStream compressed;
+
+        CompressingBody(OutputStream output, ResponseCompression compression, Encoding encoding) {
+            this.output = output;
+            this.compression = compression;
+            this.encoding = encoding;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (compressed != null) {
+                compressed.write(bytes, offset, length);
+                return;
+            }
+
+            pending.write(bytes, offset, length);
+            if (pending.size() >= compression.getMinBytes()) {
+                compressed = compression.compressing(encoding, Base64.getEncoder().wrap(new BufferedOutputStream(
+                        new NonClosingOutputStream(output))));
+                pending.writeTo(compressed);
+                pending = null;
+            }
+        }
+
+        // true if the body went out compressed, otherwise it is written now as plain JSON string content
+        boolean finish(Writer writer) throws IOException {
+            if (compressed == null) {
+                Writer escaped = new JsonStringWriter(writer);
+                escaped.write(new String(pending.toByteArray(), StandardCharsets.UTF_8));
+                escaped.flush();
+                return false;
+            }
+
+            compressed.close();
+            return true;
+        }
+    }
+
+    // closing the base64 encoder writes the padding, the response itself stays open
+    private static class NonClosingOutputStream extends OutputStream {
+
+        private final OutputStream target;
+
+        NonClosingOutputStream(OutputStream target) {
+            this.target = target;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            target.write(b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            target.write(bytes, offset, length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            target.flush();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package biz.cosee.talks.serverless.lambda.handlers;
+
+import biz.cosee.talks.serverless.lambda.generated.LambdaProxyRequest;
+import biz.cosee.talks.serverless.lambda.generated.LambdaProxyResponse;
+import lombok.Getter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+// gzip or deflate, whichever the client's Accept-Encoding prefers, for bodies of at least minBytes. A proxy integration
+// only hands text to API Gateway, so compressed bodies go out base64 encoded and flagged as such, the API's
+// binaryMediaTypes make API Gateway decode them again.
+public class ResponseCompression {
+
+    public enum Encoding {
+        GZIP("gzip"),
+        DEFLATE("deflate");
+
+        @Getter
+        private final String token;
+
+        Encoding(String token) {
+            this.token = token;
+        }
+    }
+
+    private static final int DEFAULT_MIN_BYTES = 1024;
+
+    // below this, the compressed and base64 encoded body is hardly smaller than the JSON itself
+    @Getter
+    private final int minBytes;
+    private final int level;
+
+    public ResponseCompression(int minBytes, int level) {
+        this.minBytes = minBytes;
+        this.level = level;
+    }
+
+    // COMPRESSION_MIN_BYTES=-1 turns compression off
+    public static ResponseCompression fromEnvironment() {
+        return new ResponseCompression(
+                Optional.ofNullable(System.getenv("COMPRESSION_MIN_BYTES")).map(Integer::parseInt).orElse(DEFAULT_MIN_BYTES),
+                Optional.ofNullable(System.getenv("COMPRESSION_LEVEL")).map(Integer::parseInt).orElse(Deflater.BEST_SPEED));
+    }
+
+    public boolean isEnabled() {
+        return minBytes >= 0;
+    }
+
+    public Optional<Encoding> negotiate(LambdaProxyRequest request) {
+        if (!isEnabled()) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(preferred(Headers.get(request.getHeaders(), "Accept-Encoding")));
+    }
+
+    public LambdaProxyResponse compress(LambdaProxyRequest request, LambdaProxyResponse response) {
+        if (!isEnabled() || response.getBody() == null || response.getBody().isEmpty()) {
+            return response;
+        }
+
+        Map<String, String> headers = response.getHeaders() == null ? new HashMap<>() : new HashMap<>(response.getHeaders());
+        headers.put("Vary", "Accept-Encoding");
+        response.setHeaders(headers);
+
+        Optional<Encoding> encoding = negotiate(request);
+        if (!encoding.isPresent()) {
+            return response;
+        }
+        byte[] body = response.getBody().getBytes(StandardCharsets.UTF_8);
+        if (body.length < minBytes) {
+            return response;
+        }
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 4);
+        try (OutputStream out = compressing(encoding.get(), compressed)) {
+            out.write(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        headers.put("Content-Encoding", encoding.get().getToken());
+        response.setBody(Base64.getEncoder().encodeToString(compressed.toByteArray()));
+        response.setIsBase64Encoded(true);
+        return response;
+    }
+
+    public OutputStream compressing(Encoding encoding, OutputStream target) throws IOException {
+        if (encoding == Encoding.GZIP) {
+            return new GZIPOutputStream(target) {
+                {
+                    def.setLevel(level);
+                }
+            };
+        }
+        return new DeflaterOutputStream(target, new Deflater(level)) {
+            @Override
+            public void close() throws IOException {
+                super.close();
+                def.end();
+            }
+        };
+    }
+
+    // highest q wins, gzip on a tie; * stands for whatever the client did not list
+    static Encoding preferred(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+
+        Map<String, Double> qualities = new HashMap<>();
+        for (String part : acceptEncoding.split(",")) {
+            String[] tokenAndParams = part.trim().split(";");
+            double quality = 1;
+            for (int i = 1; i < tokenAndParams.length; i++) {
+                String param = tokenAndParams[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(param.substring(2));
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            qualities.put(tokenAndParams[0].trim().toLowerCase(), quality);
+        }
+
+        Encoding preferred = null;
+        double preferredQuality = 0;
+        for (Encoding encoding : Encoding.values()) {
+            double quality = qualities.getOrDefault(encoding.getToken(), qualities.getOrDefault("*", 0.0));
+            if (quality > preferredQuality) {
+                preferred = encoding;
+                preferredQuality = quality;
+            }
+        }
+        return preferred;
+    }
+}
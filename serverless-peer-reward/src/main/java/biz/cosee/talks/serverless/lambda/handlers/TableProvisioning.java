@@ -0,0 +1,78 @@
+package biz.cosee.talks.serverless.lambda.handlers;
+
+import biz.cosee.talks.serverless.RewardStore;
+import com.amazonaws.services.dynamodbv2.model.ResourceNotFoundException;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Optional;
+import java.util.function.Supplier;
+
+@Slf4j
+public class TableProvisioning {
+
+    public enum Mode {
+        // check and create tables while the container starts, like before
+        EAGER,
+        // check and create tables once per container, the first time a request misses a table
+        LAZY,
+        // tables are provisioned out of band by the ProvisionTablesHandler
+        NONE
+    }
+
+    private final RewardStore store;
+
+    @Getter
+    private final Mode mode;
+
+    private volatile boolean verified;
+
+    public TableProvisioning(RewardStore store, Mode mode) {
+        this.store = store;
+        this.mode = mode;
+
+        if (mode == Mode.EAGER) {
+            verifyTables();
+        }
+    }
+
+    public static Mode modeFromEnvironment() {
+        return Optional.ofNullable(System.getenv("TABLE_PROVISIONING"))
+                .map(String::toUpperCase)
+                .map(Mode::valueOf)
+                .orElse(Mode.LAZY);
+    }
+
+    public <T> T call(Supplier<T> request) {
+        try {
+            return request.get();
+        } catch (ResourceNotFoundException e) {
+            if (mode != Mode.LAZY || verified) {
+                throw e;
+            }
+
+            log.warn("Table missing, provisioning tables before retrying: {}", e.getMessage());
+            verifyTables();
+            return request.get();
+        }
+    }
+
+    public void run(Runnable request) {
+        call(() -> {
+            request.run();
+            return null;
+        });
+    }
+
+    private synchronized void verifyTables() {
+        if (!verified) {
+            try {
+                store.checkAndCreateTables();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while provisioning tables", e);
+            }
+            verified = true;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package biz.cosee.talks.serverless.lambda.leaderboard;
+
+import biz.cosee.talks.serverless.RewardStore;
+import biz.cosee.talks.serverless.User;
+import biz.cosee.talks.serverless.lambda.generated.LambdaProxyRequest;
+import biz.cosee.talks.serverless.lambda.generated.LambdaProxyResponse;
+import biz.cosee.talks.serverless.lambda.handlers.AdapterFactory;
+import biz.cosee.talks.serverless.lambda.handlers.ColdStart;
+import biz.cosee.talks.serverless.lambda.handlers.CorsHeaders;
+import biz.cosee.talks.serverless.lambda.handlers.TableProvisioning;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.util.json.Jackson;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+@Slf4j
+public class LeaderboardHandler implements RequestHandler<LambdaProxyRequest, LambdaProxyResponse> {
+
+    private final ColdStart coldStart = new ColdStart(LeaderboardHandler.class);
+
+    private final RewardStore store;
+    private final TableProvisioning tableProvisioning;
+
+    // "all" or a UTC month like 2016-10
+    private final static String GET_PARAMETER_PERIOD = "period";
+    private final static String GET_PARAMETER_LIMIT = "limit";
+
+    private final static int DEFAULT_LIMIT = 20;
+
+    public LeaderboardHandler() {
+        store = AdapterFactory.storeFromEnvironment();
+        tableProvisioning = new TableProvisioning(store, TableProvisioning.modeFromEnvironment());
+        coldStart.initialized();
+    }
+
+    LeaderboardHandler(RewardStore store, TableProvisioning tableProvisioning) {
+        this.store = store;
+        this.tableProvisioning = tableProvisioning;
+    }
+
+    @Override
+    public LambdaProxyResponse handleRequest(LambdaProxyRequest request, Context context) {
+        return coldStart.track(() -> handle(request));
+    }
+
+    LambdaProxyResponse handle(LambdaProxyRequest request) {
+        try {
+            return respond(request);
+        } catch (IllegalArgumentException e) {
+            // a limit that is no number or not positive
+            log.info("Bad request: {}", e.getMessage());
+            return badRequest(e.getMessage());
+        }
+    }
+
+    private LambdaProxyResponse respond(LambdaProxyRequest request) {
+        Map<String, String> query = Optional.ofNullable(request.getQueryStringParameters()).orElse(Collections.emptyMap());
+
+        String period = query.getOrDefault(GET_PARAMETER_PERIOD, RewardStore.ALL_TIME);
+        int limit = query.containsKey(GET_PARAMETER_LIMIT) ? Integer.parseInt(query.get(GET_PARAMETER_LIMIT)) : DEFAULT_LIMIT;
+        if (limit < 1) {
+            throw new IllegalArgumentException("Invalid limit: " + limit);
+        }
+
+        List<User> ranking = tableProvisioning.call(() -> store.retrieveLeaderboard(period, limit));
+
+        LeaderboardResponse leaderboardResponse = LeaderboardResponse.builder()
+                .period(period)
+                .users(ranking)
+                .ts(Instant.now().toEpochMilli())
+                .build();
+
+        return LambdaProxyResponse.builder()
+                .statusCode(200)
+                .body(Jackson.toJsonString(leaderboardResponse))
+                .headers(CorsHeaders.build())
+                .build();
+    }
+
+    private static LambdaProxyResponse badRequest(String message) {
+        return LambdaProxyResponse.builder()
+                .statusCode(400)
+                .headers(CorsHeaders.build())
+                .body(Jackson.toJsonString(Collections.singletonMap("message", message)))
+                .build();
+    }
+}
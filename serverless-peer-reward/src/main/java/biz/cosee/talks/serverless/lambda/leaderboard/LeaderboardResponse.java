@@ -0,0 +1,22 @@
+package biz.cosee.talks.serverless.lambda.leaderboard;
+
+import biz.cosee.talks.serverless.User;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class LeaderboardResponse {
+
+    private String period;
+
+    // highest score first, rewards holds the score of the period
+    private List<User> users;
+    private Long ts;
+}
@@ -0,0 +1,30 @@
+package biz.cosee.talks.serverless.lambda.provisioning;
+
+import biz.cosee.talks.serverless.dynamodb.DynamodbAdapter;
+import biz.cosee.talks.serverless.lambda.handlers.AdapterFactory;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+public class ProvisionTablesHandler implements RequestHandler<Void, Void> {
+
+    private final DynamodbAdapter dynamodbAdapter;
+
+    public ProvisionTablesHandler() {
+        dynamodbAdapter = AdapterFactory.fromEnvironment();
+    }
+
+    @Override
+    public Void handleRequest(Void aVoid, Context context) {
+        try {
+            dynamodbAdapter.checkAndCreateTables();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while provisioning tables", e);
+        }
+
+        log.info("Tables are provisioned");
+        return null;
+    }
+}
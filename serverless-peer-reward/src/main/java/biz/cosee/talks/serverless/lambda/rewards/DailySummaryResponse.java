@@ -0,0 +1,19 @@
+package biz.cosee.talks.serverless.lambda.rewards;
+
+import biz.cosee.talks.serverless.DailySummary;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DailySummaryResponse {
+
+    private List<DailySummary> days;
+    private Long ts;
+}
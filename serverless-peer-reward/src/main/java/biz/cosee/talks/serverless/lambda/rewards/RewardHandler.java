@@ -1,57 +1,98 @@
 package biz.cosee.talks.serverless.lambda.rewards;
 
+import biz.cosee.talks.serverless.DailySummary;
 import biz.cosee.talks.serverless.Reward;
+import biz.cosee.talks.serverless.RewardPage;
+import biz.cosee.talks.serverless.RewardStore;
 import biz.cosee.talks.serverless.User;
-import biz.cosee.talks.serverless.dynamodb.DynamodbAdapter;
 import biz.cosee.talks.serverless.lambda.generated.LambdaProxyRequest;
 import biz.cosee.talks.serverless.lambda.generated.LambdaProxyResponse;
+import biz.cosee.talks.serverless.lambda.handlers.AdapterFactory;
+import biz.cosee.talks.serverless.lambda.handlers.ColdStart;
+import biz.cosee.talks.serverless.lambda.handlers.ConditionalGet;
+import biz.cosee.talks.serverless.lambda.handlers.ProxyRequestReader;
+import biz.cosee.talks.serverless.lambda.handlers.ResponseCompression;
 import biz.cosee.talks.serverless.lambda.handlers.CorsHeaders;
-import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClientBuilder;
+import biz.cosee.talks.serverless.lambda.handlers.TableProvisioning;
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.util.json.Jackson;
 import lombok.extern.slf4j.Slf4j;
-import lombok.val;
 
 import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
 @Slf4j
 public class RewardHandler implements RequestHandler<LambdaProxyRequest, LambdaProxyResponse> {
 
-    private final DynamodbAdapter dynamodbAdapter;
+    private final ColdStart coldStart = new ColdStart(RewardHandler.class);
+    private final ResponseCompression compression = ResponseCompression.fromEnvironment();
 
-    private final static String GET_PARAMETER_SINCE = "since";
+    private final RewardStore store;
+    private final TableProvisioning tableProvisioning;
+
+    final static String GET_PARAMETER_SINCE = "since";
     private final static String GET_PARAMETER_LIMIT = "limit";
+    private final static String GET_PARAMETER_CURSOR = "cursor";
     private final static String GET_PARAMETER_USERNAME = "username";
+    private final static String GET_PARAMETER_FROM = "from";
+    private final static String GET_PARAMETER_TO = "to";
 
-    public RewardHandler() throws InterruptedException {
-        val client = AmazonDynamoDBClientBuilder.defaultClient();
+    private final static int DEFAULT_PAGE_SIZE = 100;
 
-        // TODO: Error Handling
-        val tablePrefix = System.getenv("TABLE_PREFIX");
+    public RewardHandler() {
+        store = AdapterFactory.storeFromEnvironment();
+        tableProvisioning = new TableProvisioning(store, TableProvisioning.modeFromEnvironment());
+        coldStart.initialized();
+    }
 
-        dynamodbAdapter = new DynamodbAdapter(client, tablePrefix);
-        dynamodbAdapter.checkAndCreateTables();
+    RewardHandler(RewardStore store, TableProvisioning tableProvisioning) {
+        this.store = store;
+        this.tableProvisioning = tableProvisioning;
     }
 
     @Override
     public LambdaProxyResponse handleRequest(LambdaProxyRequest request, Context context) {
+        return coldStart.track(() -> compression.compress(request, handle(ProxyRequestReader.decoded(request))));
+    }
+
+    LambdaProxyResponse handle(LambdaProxyRequest request) {
+        try {
+            return respond(request);
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            // malformed cursor, since, limit or dates, or a from/to range too long to summarize
+            log.info("Bad request: {}", e.getMessage());
+            return badRequest(e.getMessage());
+        }
+    }
+
+    private LambdaProxyResponse respond(LambdaProxyRequest request) {
         String httpMethod = request.getHttpMethod();
 
         Map<String, String> query = request.getQueryStringParameters();
 
-
         switch (httpMethod.toUpperCase()) {
             case "POST":
                 if (request.getBody().isEmpty()) {
                     return badRequest();
                 }
 
+                if (request.getBody().trim().startsWith("[")) {
+                    List<Reward> rewards = Arrays.asList(Jackson.fromJsonString(request.getBody(), Reward[].class));
+                    assignDistinctTimestamps(rewards, Instant.now().toEpochMilli());
+                    tableProvisioning.run(() -> store.rewardUsers(rewards));
+                    return LambdaProxyResponse.builder().statusCode(204).headers(CorsHeaders.build()).body("").build();
+                }
+
                 Reward reward = Jackson.fromJsonString(request.getBody(), Reward.class);
                 reward.setTs(Instant.now().toEpochMilli());
-                dynamodbAdapter.rewardUser(reward);
+                tableProvisioning.run(() -> store.rewardUser(reward));
                 return LambdaProxyResponse.builder().statusCode(204).headers(CorsHeaders.build()).body("").build();
             case "GET":
                 // TODO logging for ambiguous options
@@ -59,15 +100,36 @@ public class RewardHandler implements RequestHandler<LambdaProxyRequest, LambdaP
                     return badRequest();
                 }
 
-                if (query.containsKey(GET_PARAMETER_SINCE)) {
-                    List<Reward> rewards = dynamodbAdapter.retrieveRewardsSince(Long.parseLong(query.get(GET_PARAMETER_SINCE)));
-                    return wrapInResponse(rewards, Instant.now().toEpochMilli());
+                String etag = ConditionalGet.etag(tableProvisioning.call(store::retrieveVersion));
+                if (ConditionalGet.notModified(request, etag)) {
+                    return ConditionalGet.notModifiedResponse(etag);
+                }
+
+                // daily totals instead of single rewards, for month and year views
+                if (query.containsKey(GET_PARAMETER_FROM)) {
+                    LocalDate from = LocalDate.parse(query.get(GET_PARAMETER_FROM));
+                    LocalDate to = query.containsKey(GET_PARAMETER_TO)
+                            ? LocalDate.parse(query.get(GET_PARAMETER_TO))
+                            : LocalDate.now(ZoneOffset.UTC);
+                    List<DailySummary> days = tableProvisioning.call(() -> store.retrieveDailySummaries(from, to));
+                    return wrapInResponse(DailySummaryResponse.builder().days(days).ts(Instant.now().toEpochMilli()).build(), etag);
+                } else if (query.containsKey(GET_PARAMETER_SINCE) && isPaged(query)) {
+                    Long since = Long.parseLong(query.get(GET_PARAMETER_SINCE));
+                    RewardPage page = tableProvisioning.call(() -> store.retrieveRewardsSince(since, query.get(GET_PARAMETER_CURSOR), pageSize(query)));
+                    return wrapInResponse(page, Instant.now().toEpochMilli(), etag);
+                } else if (query.containsKey(GET_PARAMETER_SINCE)) {
+                    Long since = Long.parseLong(query.get(GET_PARAMETER_SINCE));
+                    List<Reward> rewards = tableProvisioning.call(() -> store.retrieveRewardsSince(since));
+                    return wrapInResponse(rewards, Instant.now().toEpochMilli(), etag);
                 } else if (query.containsKey(GET_PARAMETER_USERNAME)) {
-                    List<Reward> rewards = dynamodbAdapter.retrieveRewardsContaining(User.builder().username(query.get(GET_PARAMETER_USERNAME)).build());
-                    return wrapInResponse(rewards, Instant.now().toEpochMilli());
-                } else if (query.containsKey(GET_PARAMETER_LIMIT)) {
-                    List<Reward> rewards = dynamodbAdapter.retrieveRewardsLast(Integer.parseInt(query.get(GET_PARAMETER_LIMIT)));
-                    return wrapInResponse(rewards, Instant.now().toEpochMilli());
+                    User user = User.builder().username(query.get(GET_PARAMETER_USERNAME)).build();
+                    List<Reward> rewards = query.containsKey(GET_PARAMETER_LIMIT)
+                            ? tableProvisioning.call(() -> store.retrieveRewardsContaining(user, Integer.parseInt(query.get(GET_PARAMETER_LIMIT))))
+                            : tableProvisioning.call(() -> store.retrieveRewardsContaining(user));
+                    return wrapInResponse(rewards, Instant.now().toEpochMilli(), etag);
+                } else if (isPaged(query)) {
+                    RewardPage page = tableProvisioning.call(() -> store.retrieveRewardsLast(pageSize(query), query.get(GET_PARAMETER_CURSOR)));
+                    return wrapInResponse(page, Instant.now().toEpochMilli(), etag);
                 }
 
                 break;
@@ -78,18 +140,48 @@ public class RewardHandler implements RequestHandler<LambdaProxyRequest, LambdaP
         return badRequest();
     }
 
+    // ts is the range key, so rewards of one bulk request must not share a millisecond. Counting up from now keeps
+    // them on today and in order, the store moves any that still collide on to the next free millisecond.
+    private static void assignDistinctTimestamps(List<Reward> rewards, long now) {
+        for (int i = 0; i < rewards.size(); i++) {
+            rewards.get(i).setTs(now + i);
+        }
+    }
+
+    static boolean isPaged(Map<String, String> query) {
+        return query.containsKey(GET_PARAMETER_LIMIT) || query.containsKey(GET_PARAMETER_CURSOR);
+    }
+
+    private static int pageSize(Map<String, String> query) {
+        return query.containsKey(GET_PARAMETER_LIMIT) ? Integer.parseInt(query.get(GET_PARAMETER_LIMIT)) : DEFAULT_PAGE_SIZE;
+    }
+
     private static final LambdaProxyResponse badRequest() {
         return LambdaProxyResponse.builder().statusCode(400).build();
     }
 
+    static LambdaProxyResponse badRequest(String message) {
+        return LambdaProxyResponse.builder()
+                .statusCode(400)
+                .headers(CorsHeaders.build())
+                .body(Jackson.toJsonString(Collections.singletonMap("message", message)))
+                .build();
+    }
+
+
+    private LambdaProxyResponse wrapInResponse(RewardPage page, Long ts, String etag) {
+        return wrapInResponse(RewardResponse.builder().rewards(page.getRewards()).ts(ts).cursor(page.getCursor()).build(), etag);
+    }
 
-    private LambdaProxyResponse wrapInResponse(List<Reward> rewards, Long ts) {
-        RewardResponse userResponse = RewardResponse.builder().rewards(rewards).ts(ts).build();
+    private LambdaProxyResponse wrapInResponse(List<Reward> rewards, Long ts, String etag) {
+        return wrapInResponse(RewardResponse.builder().rewards(rewards).ts(ts).build(), etag);
+    }
 
+    private LambdaProxyResponse wrapInResponse(Object rewardResponse, String etag) {
         LambdaProxyResponse response = LambdaProxyResponse.builder()
                 .statusCode(200)
-                .body(Jackson.toJsonString(userResponse))
-                .headers(CorsHeaders.build())
+                .body(Jackson.toJsonString(rewardResponse))
+                .headers(ConditionalGet.headers(etag))
                 .build();
         return response;
     }
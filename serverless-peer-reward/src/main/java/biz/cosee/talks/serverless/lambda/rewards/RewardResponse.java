@@ -1,6 +1,7 @@
 package biz.cosee.talks.serverless.lambda.rewards;
 
 import biz.cosee.talks.serverless.Reward;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -16,4 +17,8 @@ public class RewardResponse {
 
     private List<Reward> rewards;
     private Long ts;
+
+    // continuation token for the next page, absent on the last one
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String cursor;
 }
@@ -0,0 +1,114 @@
+package biz.cosee.talks.serverless.lambda.rewards;
+
+import biz.cosee.talks.serverless.Reward;
+import biz.cosee.talks.serverless.RewardStore;
+import biz.cosee.talks.serverless.lambda.generated.LambdaProxyRequest;
+import biz.cosee.talks.serverless.lambda.handlers.AdapterFactory;
+import biz.cosee.talks.serverless.lambda.handlers.ColdStart;
+import biz.cosee.talks.serverless.lambda.handlers.ConditionalGet;
+import biz.cosee.talks.serverless.lambda.handlers.ProxyRequestReader;
+import biz.cosee.talks.serverless.lambda.handlers.ProxyResponseWriter;
+import biz.cosee.talks.serverless.lambda.handlers.ResponseCompression;
+import biz.cosee.talks.serverless.lambda.handlers.TableProvisioning;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestStreamHandler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static biz.cosee.talks.serverless.lambda.rewards.RewardHandler.GET_PARAMETER_SINCE;
+import static biz.cosee.talks.serverless.lambda.rewards.RewardHandler.isPaged;
+
+public class RewardStreamHandler implements RequestStreamHandler {
+
+    private final ColdStart coldStart = new ColdStart(RewardStreamHandler.class);
+    private final ResponseCompression compression = ResponseCompression.fromEnvironment();
+
+    private final RewardStore store;
+    private final TableProvisioning tableProvisioning;
+    private final RewardHandler rewardHandler;
+
+    public RewardStreamHandler() {
+        store = AdapterFactory.storeFromEnvironment();
+        tableProvisioning = new TableProvisioning(store, TableProvisioning.modeFromEnvironment());
+        rewardHandler = new RewardHandler(store, tableProvisioning);
+        coldStart.initialized();
+    }
+
+    RewardStreamHandler(RewardStore store, TableProvisioning tableProvisioning) {
+        this.store = store;
+        this.tableProvisioning = tableProvisioning;
+        this.rewardHandler = new RewardHandler(store, tableProvisioning);
+    }
+
+    @Override
+    public void handleRequest(InputStream input, OutputStream output, Context context) throws IOException {
+        LambdaProxyRequest request = ProxyRequestReader.read(input);
+
+        coldStart.track(() -> {
+            try {
+                handle(request, output);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return null;
+        });
+    }
+
+    private void handle(LambdaProxyRequest request, OutputStream output) throws IOException {
+        Map<String, String> query = request.getQueryStringParameters();
+
+        if ("GET".equalsIgnoreCase(request.getHttpMethod()) && query != null && query.containsKey(GET_PARAMETER_SINCE)
+                && !isPaged(query)) {
+            Long since;
+            try {
+                since = Long.parseLong(query.get(GET_PARAMETER_SINCE));
+            } catch (NumberFormatException e) {
+                ProxyResponseWriter.write(output, RewardHandler.badRequest(e.getMessage()));
+                return;
+            }
+
+            String etag = ConditionalGet.etag(tableProvisioning.call(store::retrieveVersion));
+            if (ConditionalGet.notModified(request, etag)) {
+                ProxyResponseWriter.write(output, ConditionalGet.notModifiedResponse(etag));
+                return;
+            }
+
+            Iterator<Reward> rewards;
+            try {
+                rewards = tableProvisioning.call(() -> started(store.streamRewardsSince(since)));
+            } catch (IllegalArgumentException e) {
+                // a window longer than the store queries
+                ProxyResponseWriter.write(output, RewardHandler.badRequest(e.getMessage()));
+                return;
+            }
+
+            ProxyResponseWriter.writeJson(output, 200, ConditionalGet.headers(etag), request, compression, body -> {
+                body.writeStartObject();
+                body.writeArrayFieldStart("rewards");
+                while (rewards.hasNext()) {
+                    body.writeObject(rewards.next());
+                }
+                body.writeEndArray();
+                body.writeNumberField("ts", Instant.now().toEpochMilli());
+                body.writeEndObject();
+            });
+            return;
+        }
+
+        ProxyResponseWriter.write(output, compression.compress(request, rewardHandler.handle(request)));
+    }
+
+    // pulls the first page before the response starts, so a missing table still fails the request cleanly
+    private static <T> Iterator<T> started(Stream<T> stream) {
+        Iterator<T> iterator = stream.iterator();
+        iterator.hasNext();
+        return iterator;
+    }
+}
@@ -0,0 +1,37 @@
+package biz.cosee.talks.serverless.lambda.schedule;
+
+import biz.cosee.talks.serverless.RewardStore;
+import biz.cosee.talks.serverless.lambda.handlers.AdapterFactory;
+import biz.cosee.talks.serverless.lambda.handlers.ColdStart;
+import biz.cosee.talks.serverless.lambda.handlers.TableProvisioning;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+
+import java.time.LocalDate;
+import java.util.Map;
+
+// the nightly schedule compacts the lookback window, {"from": "2016-01-01", "to": "2016-06-30"} backfills older days
+public class CompactDaysHandler implements RequestHandler<Map<String, Object>, Integer> {
+
+    private final ColdStart coldStart = new ColdStart(CompactDaysHandler.class);
+
+    private final RewardStore store;
+    private final TableProvisioning tableProvisioning;
+
+    public CompactDaysHandler() {
+        store = AdapterFactory.storeFromEnvironment();
+        tableProvisioning = new TableProvisioning(store, TableProvisioning.modeFromEnvironment());
+        coldStart.initialized();
+    }
+
+    @Override
+    public Integer handleRequest(Map<String, Object> input, Context context) {
+        if (input == null || !input.containsKey("from")) {
+            return coldStart.track(() -> tableProvisioning.call(store::compactFinishedDays));
+        }
+
+        LocalDate from = LocalDate.parse(input.get("from").toString());
+        LocalDate to = input.containsKey("to") ? LocalDate.parse(input.get("to").toString()) : from;
+        return coldStart.track(() -> tableProvisioning.call(() -> store.compactDays(from, to)));
+    }
+}
@@ -0,0 +1,27 @@
+package biz.cosee.talks.serverless.lambda.schedule;
+
+import biz.cosee.talks.serverless.RewardStore;
+import biz.cosee.talks.serverless.lambda.handlers.AdapterFactory;
+import biz.cosee.talks.serverless.lambda.handlers.ColdStart;
+import biz.cosee.talks.serverless.lambda.handlers.TableProvisioning;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+
+public class ConsolidateCountersHandler implements RequestHandler<Void, Integer> {
+
+    private final ColdStart coldStart = new ColdStart(ConsolidateCountersHandler.class);
+
+    private final RewardStore store;
+    private final TableProvisioning tableProvisioning;
+
+    public ConsolidateCountersHandler() {
+        store = AdapterFactory.storeFromEnvironment();
+        tableProvisioning = new TableProvisioning(store, TableProvisioning.modeFromEnvironment());
+        coldStart.initialized();
+    }
+
+    @Override
+    public Integer handleRequest(Void aVoid, Context context) {
+        return coldStart.track(() -> tableProvisioning.call(store::consolidateUserCounters));
+    }
+}
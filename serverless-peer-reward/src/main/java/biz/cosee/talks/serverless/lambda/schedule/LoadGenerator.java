@@ -0,0 +1,148 @@
+package biz.cosee.talks.serverless.lambda.schedule;
+
+import biz.cosee.talks.serverless.Reward;
+import biz.cosee.talks.serverless.RewardStore;
+import biz.cosee.talks.serverless.User;
+import biz.cosee.talks.serverless.lambda.handlers.AdapterFactory;
+import biz.cosee.talks.serverless.metrics.Metrics;
+import biz.cosee.talks.serverless.metrics.OperationStats;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.IntStream;
+
+import static biz.cosee.talks.serverless.lambda.schedule.RandomRewardHandler.randomReward;
+import static java.util.stream.Collectors.toList;
+
+// RandomRewardHandler at a configurable rate, against DynamoDB (Local via DYNAMODB_ENDPOINT) or STORAGE_ENGINE=memory
+@Slf4j
+public class LoadGenerator {
+
+    private final RewardStore store;
+    private final LoadSettings settings;
+    private final List<User> users;
+
+    private final Metrics metrics = new Metrics();
+
+    public LoadGenerator(RewardStore store, LoadSettings settings) {
+        this.store = store;
+        this.settings = settings;
+        this.users = IntStream.range(0, settings.getUsers())
+                .mapToObj(i -> User.builder().username("load-" + i).build())
+                .collect(toList());
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        val store = AdapterFactory.storeFromEnvironment();
+        store.checkAndCreateTables();
+
+        val report = new LoadGenerator(store, LoadSettings.fromEnvironment()).run();
+
+        log.info("Load finished: {} requests in {} ms, {} requests/s, {} throttles, {} retries, {} RCU, {} WCU",
+                report.getRequests(), report.getDurationMillis(), Math.round(report.getRequestsPerSecond()),
+                report.getThrottles(), report.getRetries(), Math.round(report.getRcu()), Math.round(report.getWcu()));
+        report.getOperations().forEach(stats -> log.info(Metrics.toJson(stats)));
+    }
+
+    public LoadReport run() throws InterruptedException {
+        long requests = (long) settings.getRate() * settings.getDurationSeconds();
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / settings.getRate();
+
+        // capacity and throttles come from the client's collector, start from an empty window
+        Metrics.global().flush();
+
+        val issued = new AtomicLong();
+        val workers = Executors.newFixedThreadPool(settings.getConcurrency());
+        long start = System.nanoTime();
+        for (int i = 0; i < settings.getConcurrency(); i++) {
+            workers.execute(() -> {
+                for (long request = issued.getAndIncrement(); request < requests; request = issued.getAndIncrement()) {
+                    long scheduled = start + request * intervalNanos;
+                    if (!sleepUntil(scheduled)) {
+                        return;
+                    }
+                    issue(ThreadLocalRandom.current(), scheduled);
+                }
+            });
+        }
+        awaitTermination(workers);
+        long durationNanos = System.nanoTime() - start;
+
+        List<OperationStats> dynamodb = Metrics.global().snapshot();
+        return new LoadReport(
+                requests,
+                TimeUnit.NANOSECONDS.toMillis(durationNanos),
+                requests * (double) TimeUnit.SECONDS.toNanos(1) / durationNanos,
+                metrics.snapshot(),
+                sum(dynamodb, OperationStats::getRcu),
+                sum(dynamodb, OperationStats::getWcu),
+                (long) sum(dynamodb, OperationStats::getRetries),
+                (long) sum(dynamodb, OperationStats::getThrottles));
+    }
+
+    private void issue(Random random, long scheduled) {
+        String operation;
+        Runnable request;
+        if (random.nextDouble() >= settings.getReadRatio()) {
+            operation = "load.rewardUser";
+            Reward reward = randomReward(users, random);
+            request = () -> store.rewardUser(reward);
+        } else {
+            switch (random.nextInt(3)) {
+                case 0:
+                    operation = "load.latestRewards";
+                    request = () -> store.retrieveRewardsLast(settings.getPageSize(), null);
+                    break;
+                case 1:
+                    operation = "load.userSummaries";
+                    request = store::retrieveUserSummaries;
+                    break;
+                default:
+                    operation = "load.leaderboard";
+                    request = () -> store.retrieveLeaderboard(RewardStore.ALL_TIME, settings.getPageSize());
+            }
+        }
+
+        boolean failed = false;
+        try {
+            request.run();
+        } catch (RuntimeException e) {
+            failed = true;
+            log.debug("{} failed", operation, e);
+        }
+        metrics.record(operation, System.nanoTime() - scheduled, failed);
+    }
+
+    private static boolean sleepUntil(long nanoTime) {
+        long remaining = nanoTime - System.nanoTime();
+        try {
+            if (remaining > 0) {
+                TimeUnit.NANOSECONDS.sleep(remaining);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void awaitTermination(ExecutorService workers) throws InterruptedException {
+        workers.shutdown();
+        if (!workers.awaitTermination(settings.getDurationSeconds() + 60, TimeUnit.SECONDS)) {
+            log.warn("Requests still running after the grace period, stopping them");
+            workers.shutdownNow();
+        }
+    }
+
+    private static double sum(List<OperationStats> operations, ToDoubleFunction<OperationStats> value) {
+        return operations.stream().mapToDouble(value).sum();
+    }
+}
@@ -0,0 +1,23 @@
+package biz.cosee.talks.serverless.lambda.schedule;
+
+import biz.cosee.talks.serverless.metrics.OperationStats;
+import lombok.Value;
+
+import java.util.List;
+
+@Value
+public class LoadReport {
+
+    private long requests;
+    private long durationMillis;
+    private double requestsPerSecond;
+
+    // latency from the scheduled start, so requests queued behind slow ones count their wait
+    private List<OperationStats> operations;
+
+    // summed over all DynamoDB requests of the run, zero against the in-memory store
+    private double rcu;
+    private double wcu;
+    private long retries;
+    private long throttles;
+}
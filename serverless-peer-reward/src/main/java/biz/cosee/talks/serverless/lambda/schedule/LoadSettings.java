@@ -0,0 +1,40 @@
+package biz.cosee.talks.serverless.lambda.schedule;
+
+import lombok.Data;
+
+import java.util.Optional;
+
+@Data
+public class LoadSettings {
+
+    // requests per second over all workers, issued on a fixed schedule whether or not earlier ones returned
+    private int rate = 50;
+
+    // worker threads, caps the requests in flight
+    private int concurrency = 8;
+
+    private int durationSeconds = 60;
+
+    // distinct users rewards are drawn between
+    private int users = 100;
+
+    // share of requests going to the read endpoints, the rest are rewardUser
+    private double readRatio = 0.8;
+
+    private int pageSize = 20;
+
+    static LoadSettings fromEnvironment() {
+        LoadSettings settings = new LoadSettings();
+        fromEnvironment("LOAD_RATE").map(Integer::parseInt).ifPresent(settings::setRate);
+        fromEnvironment("LOAD_CONCURRENCY").map(Integer::parseInt).ifPresent(settings::setConcurrency);
+        fromEnvironment("LOAD_DURATION_SECONDS").map(Integer::parseInt).ifPresent(settings::setDurationSeconds);
+        fromEnvironment("LOAD_USERS").map(Integer::parseInt).ifPresent(settings::setUsers);
+        fromEnvironment("LOAD_READ_RATIO").map(Double::parseDouble).ifPresent(settings::setReadRatio);
+        fromEnvironment("LOAD_PAGE_SIZE").map(Integer::parseInt).ifPresent(settings::setPageSize);
+        return settings;
+    }
+
+    private static Optional<String> fromEnvironment(String name) {
+        return Optional.ofNullable(System.getenv(name));
+    }
+}
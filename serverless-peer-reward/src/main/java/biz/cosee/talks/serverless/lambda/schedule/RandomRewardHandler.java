@@ -1,19 +1,32 @@
 package biz.cosee.talks.serverless.lambda.schedule;
 
 import biz.cosee.talks.serverless.Reward;
-import biz.cosee.talks.serverless.dynamodb.DynamodbAdapter;
-import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClientBuilder;
+import biz.cosee.talks.serverless.RewardStore;
+import biz.cosee.talks.serverless.User;
+import biz.cosee.talks.serverless.lambda.handlers.AdapterFactory;
+import biz.cosee.talks.serverless.lambda.handlers.ColdStart;
+import biz.cosee.talks.serverless.lambda.handlers.TableProvisioning;
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import lombok.val;
 
 import java.time.Instant;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class RandomRewardHandler implements RequestHandler<Void, Void> {
 
-    private final DynamodbAdapter dynamodbAdapter;
-    private final static String[] DESCRIPTIONS = new String[] {
+    private final ColdStart coldStart = new ColdStart(RandomRewardHandler.class);
+
+    private final RewardStore store;
+    private final TableProvisioning tableProvisioning;
+
+    // users seen by this container's previous invocation, the next reward is written while they are read again
+    private volatile List<User> users;
+
+    final static String[] DESCRIPTIONS = new String[] {
             "Dude your code is amazing!",
             "Thanks for helping me out yesterday.",
             "Thanks for finding my Memory leak the other day.",
@@ -27,38 +40,59 @@ public class RandomRewardHandler implements RequestHandler<Void, Void> {
             "I just like you."
     };
 
-    public RandomRewardHandler() throws InterruptedException {
-        val client = AmazonDynamoDBClientBuilder.defaultClient();
-
-        // TODO: Error Handling
-        val tablePrefix = System.getenv("TABLE_PREFIX");
+    public RandomRewardHandler() {
+        store = AdapterFactory.storeFromEnvironment();
+        tableProvisioning = new TableProvisioning(store, TableProvisioning.modeFromEnvironment());
+        coldStart.initialized();
+    }
 
-        dynamodbAdapter = new DynamodbAdapter(client, tablePrefix);
-        dynamodbAdapter.checkAndCreateTables();
+    RandomRewardHandler(RewardStore store, TableProvisioning tableProvisioning) {
+        this.store = store;
+        this.tableProvisioning = tableProvisioning;
     }
 
     @Override
     public Void handleRequest(Void aVoid, Context context) {
-        val users = dynamodbAdapter.retrieveUsers();
+        return coldStart.track(() -> tableProvisioning.call(() -> {
+            CompletableFuture<List<User>> refreshed = store.retrieveUserSummariesAsync();
+            List<User> known = users != null ? users : join(refreshed);
+            CompletableFuture<Void> written = store.rewardUserAsync(randomReward(known, new Random()));
+
+            users = join(refreshed);
+            join(written);
+            return null;
+        }));
+    }
+
+    // the store's own exceptions, so a missing table still reaches TableProvisioning
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    // giver and receiver are two distinct users, the list is left as it is
+    static Reward randomReward(List<User> users, Random rand) {
         if (users.size() < 2)
             throw new RuntimeException("Need at least two users in Database.");
 
-        Random rand = new Random();
-        val userFrom = users.get(rand.nextInt(users.size()));
-        users.remove(userFrom);
-        val userTo = users.get(rand.nextInt(users.size()));
+        val from = rand.nextInt(users.size());
+        val userFrom = users.get(from);
+        val userTo = users.get((from + 1 + rand.nextInt(users.size() - 1)) % users.size());
         val amount = (rand.nextInt(5) + 1 ) * 5;
         val description = DESCRIPTIONS[rand.nextInt(DESCRIPTIONS.length)];
 
-        dynamodbAdapter.rewardUser(Reward.builder()
+        return Reward.builder()
                 .amount(amount)
                 .description(description)
                 .givenByUsername(userFrom.getUsername())
                 .rewardedUser(userTo.getUsername())
                 .ts(Instant.now().toEpochMilli())
-                .build()
-        );
-
-        return null;
+                .build();
     }
 }
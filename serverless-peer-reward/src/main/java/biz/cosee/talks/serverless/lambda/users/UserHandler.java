@@ -1,16 +1,20 @@
 package biz.cosee.talks.serverless.lambda.users;
 
+import biz.cosee.talks.serverless.RewardStore;
 import biz.cosee.talks.serverless.User;
-import biz.cosee.talks.serverless.dynamodb.DynamodbAdapter;
 import biz.cosee.talks.serverless.lambda.generated.LambdaProxyRequest;
 import biz.cosee.talks.serverless.lambda.generated.LambdaProxyResponse;
-import biz.cosee.talks.serverless.lambda.handlers.CorsHeaders;
-import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClientBuilder;
+import biz.cosee.talks.serverless.lambda.handlers.AdapterFactory;
+import biz.cosee.talks.serverless.lambda.handlers.ColdStart;
+import biz.cosee.talks.serverless.lambda.handlers.ConditionalGet;
+import biz.cosee.talks.serverless.lambda.handlers.ProxyRequestReader;
+import biz.cosee.talks.serverless.lambda.handlers.ResponseCompression;
+import biz.cosee.talks.serverless.lambda.handlers.TableProvisioning;
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.util.json.Jackson;
-import lombok.val;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -18,31 +22,56 @@ import java.util.stream.Stream;
 
 public class UserHandler implements RequestHandler<LambdaProxyRequest, LambdaProxyResponse> {
 
-    private final DynamodbAdapter dynamodbAdapter;
+    private final ColdStart coldStart = new ColdStart(UserHandler.class);
+    private final ResponseCompression compression = ResponseCompression.fromEnvironment();
 
-    public UserHandler() throws InterruptedException {
-        val client = AmazonDynamoDBClientBuilder.defaultClient();
+    private final RewardStore store;
+    private final TableProvisioning tableProvisioning;
 
-        // TODO: Error Handling
-        val tablePrefix = System.getenv("TABLE_PREFIX");
+    public UserHandler() {
+        store = AdapterFactory.storeFromEnvironment();
+        tableProvisioning = new TableProvisioning(store, TableProvisioning.modeFromEnvironment());
+        coldStart.initialized();
+    }
 
-        dynamodbAdapter = new DynamodbAdapter(client, tablePrefix);
-        this.dynamodbAdapter.checkAndCreateTables();
+    UserHandler(RewardStore store, TableProvisioning tableProvisioning) {
+        this.store = store;
+        this.tableProvisioning = tableProvisioning;
     }
 
     @Override
     public LambdaProxyResponse handleRequest(LambdaProxyRequest request, Context context) {
+        return coldStart.track(() -> compression.compress(request, handle(ProxyRequestReader.decoded(request))));
+    }
+
+    LambdaProxyResponse handle(LambdaProxyRequest request) {
         final Map<String, String> query = request.getQueryStringParameters();
 
+        final boolean summary = query != null && isSummary(query);
+
+        final String etag = ConditionalGet.etag(tableProvisioning.call(store::retrieveVersion));
+        if (ConditionalGet.notModified(request, etag)) {
+            return ConditionalGet.notModifiedResponse(etag);
+        }
+
         final List<User> results;
         if (query != null && query.containsKey("usernames")) {
             List<User> usersForQuery = extractUsernamesFromQuery(query);
-            results = dynamodbAdapter.retrieveUsers(usersForQuery);
+            results = summary
+                    ? tableProvisioning.call(() -> store.retrieveUserSummaries(usersForQuery))
+                    : tableProvisioning.call(() -> store.retrieveUsers(usersForQuery));
         } else {
-            results = dynamodbAdapter.retrieveUsers();
+            results = summary
+                    ? tableProvisioning.call(() -> store.retrieveUserSummaries())
+                    : tableProvisioning.call(() -> store.retrieveUsers());
         }
 
-        return wrapInResponse(results);
+        return wrapInResponse(results, etag);
+    }
+
+    // fields=username,rewards skips the coinsGiven breakdown, which is the expensive part of a user
+    private static boolean isSummary(Map<String, String> query) {
+        return query.containsKey("fields") && !Arrays.asList(query.get("fields").split(",")).contains("coinsGiven");
     }
 
     private List<User> extractUsernamesFromQuery(Map<String, String> query) {
@@ -52,13 +81,13 @@ public class UserHandler implements RequestHandler<LambdaProxyRequest, LambdaPro
                 .collect(Collectors.toList());
     }
 
-    private LambdaProxyResponse wrapInResponse(List<User> users) {
+    private LambdaProxyResponse wrapInResponse(List<User> users, String etag) {
         UserResponse userResponse = UserResponse.builder().users(users).build();
 
         LambdaProxyResponse response = LambdaProxyResponse.builder()
                 .statusCode(200)
                 .body(Jackson.toJsonString(userResponse))
-                .headers(CorsHeaders.build())
+                .headers(ConditionalGet.headers(etag))
                 .build();
         return response;
     }
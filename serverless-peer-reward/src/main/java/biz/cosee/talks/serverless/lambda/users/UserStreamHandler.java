@@ -0,0 +1,77 @@
+package biz.cosee.talks.serverless.lambda.users;
+
+import biz.cosee.talks.serverless.RewardStore;
+import biz.cosee.talks.serverless.User;
+import biz.cosee.talks.serverless.lambda.generated.LambdaProxyRequest;
+import biz.cosee.talks.serverless.lambda.handlers.AdapterFactory;
+import biz.cosee.talks.serverless.lambda.handlers.ColdStart;
+import biz.cosee.talks.serverless.lambda.handlers.ConditionalGet;
+import biz.cosee.talks.serverless.lambda.handlers.ProxyRequestReader;
+import biz.cosee.talks.serverless.lambda.handlers.ProxyResponseWriter;
+import biz.cosee.talks.serverless.lambda.handlers.ResponseCompression;
+import biz.cosee.talks.serverless.lambda.handlers.TableProvisioning;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestStreamHandler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+public class UserStreamHandler implements RequestStreamHandler {
+
+    private final ColdStart coldStart = new ColdStart(UserStreamHandler.class);
+    private final ResponseCompression compression = ResponseCompression.fromEnvironment();
+
+    private final RewardStore store;
+    private final TableProvisioning tableProvisioning;
+    private final UserHandler userHandler;
+
+    public UserStreamHandler() {
+        store = AdapterFactory.storeFromEnvironment();
+        tableProvisioning = new TableProvisioning(store, TableProvisioning.modeFromEnvironment());
+        userHandler = new UserHandler(store, tableProvisioning);
+        coldStart.initialized();
+    }
+
+    @Override
+    public void handleRequest(InputStream input, OutputStream output, Context context) throws IOException {
+        LambdaProxyRequest request = ProxyRequestReader.read(input);
+
+        coldStart.track(() -> {
+            try {
+                handle(request, output);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return null;
+        });
+    }
+
+    private void handle(LambdaProxyRequest request, OutputStream output) throws IOException {
+        if (request.getQueryStringParameters() != null) {
+            ProxyResponseWriter.write(output, compression.compress(request, userHandler.handle(request)));
+            return;
+        }
+
+        String etag = ConditionalGet.etag(tableProvisioning.call(store::retrieveVersion));
+        if (ConditionalGet.notModified(request, etag)) {
+            ProxyResponseWriter.write(output, ConditionalGet.notModifiedResponse(etag));
+            return;
+        }
+
+        // the directory is bounded, so it keeps the parallel segmented scan and only the serialization streams
+        List<User> users = tableProvisioning.call(() -> store.retrieveUsers());
+
+        ProxyResponseWriter.writeJson(output, 200, ConditionalGet.headers(etag), request, compression, body -> {
+            body.writeStartObject();
+            body.writeArrayFieldStart("users");
+            for (User user : users) {
+                body.writeObject(user);
+            }
+            body.writeEndArray();
+            body.writeEndObject();
+        });
+    }
+}
@@ -0,0 +1,46 @@
+package biz.cosee.talks.serverless.lambda.handlers;
+
+import biz.cosee.talks.serverless.lambda.generated.LambdaProxyRequest;
+import biz.cosee.talks.serverless.lambda.generated.LambdaProxyResponse;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ConditionalGetTest {
+
+    private static LambdaProxyRequest requestWith(String header, String value) {
+        LambdaProxyRequest request = new LambdaProxyRequest();
+        request.setHttpMethod("GET");
+        request.setHeaders(Collections.singletonMap(header, value));
+        return request;
+    }
+
+    @Test
+    public void whenIfNoneMatchMatchesVersionShouldBeNotModified() {
+        String etag = ConditionalGet.etag(42);
+
+        assertThat(ConditionalGet.notModified(requestWith("If-None-Match", etag), etag)).isTrue();
+        assertThat(ConditionalGet.notModified(requestWith("if-none-match", "\"41\", \"42\""), etag)).isTrue();
+        assertThat(ConditionalGet.notModified(requestWith("If-None-Match", "*"), etag)).isTrue();
+    }
+
+    @Test
+    public void whenVersionMovedOnShouldBeModified() {
+        String etag = ConditionalGet.etag(43);
+
+        assertThat(ConditionalGet.notModified(requestWith("If-None-Match", ConditionalGet.etag(42)), etag)).isFalse();
+        assertThat(ConditionalGet.notModified(requestWith("Accept", "application/json"), etag)).isFalse();
+        assertThat(ConditionalGet.notModified(new LambdaProxyRequest(), etag)).isFalse();
+    }
+
+    @Test
+    public void notModifiedResponseShouldCarryEtagWithoutBody() {
+        LambdaProxyResponse response = ConditionalGet.notModifiedResponse(ConditionalGet.etag(42));
+
+        assertThat(response.getStatusCode()).isEqualTo(304);
+        assertThat(response.getBody()).isEmpty();
+        assertThat(response.getHeaders()).containsEntry("ETag", "W/\"42\"").containsKey("Access-Control-Allow-Origin");
+    }
+}
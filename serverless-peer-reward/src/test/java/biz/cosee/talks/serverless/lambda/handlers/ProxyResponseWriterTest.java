@@ -0,0 +1,106 @@
+package biz.cosee.talks.serverless.lambda.handlers;
+
+import biz.cosee.talks.serverless.lambda.generated.LambdaProxyRequest;
+import com.amazonaws.util.json.Jackson;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ProxyResponseWriterTest {
+
+    private static final String PROXY_REQUEST = "{\"resource\":\"/rewards\",\"path\":\"/rewards\",\"httpMethod\":\"GET\","
+            + "\"headers\":{\"Accept\":\"application/json\"},\"queryStringParameters\":{\"since\":\"1\"},"
+            + "\"pathParameters\":null,\"stageVariables\":null,"
+            + "\"requestContext\":{\"accountId\":\"1\",\"identity\":{\"sourceIp\":\"127.0.0.1\"}},\"body\":null}";
+
+    @Test
+    public void testStreamedBodyIsEscapedLikeStringBody() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ProxyResponseWriter.writeJson(output, 200, ImmutableMap.of("A", "b"), body -> {
+            body.writeStartObject();
+            body.writeStringField("description", "Say \"thanks\"\n\\o/ \u00e4\u00f6\u00fc");
+            body.writeEndObject();
+        });
+
+        JsonNode response = Jackson.jsonNodeOf(output.toString("UTF-8"));
+        assertThat(response.get("statusCode").asInt()).isEqualTo(200);
+        assertThat(response.get("headers").get("A").asText()).isEqualTo("b");
+        assertThat(response.get("body").asText()).isEqualTo("{\"description\":\"Say \\\"thanks\\\"\\n\\\\o/ \u00e4\u00f6\u00fc\"}");
+    }
+
+    @Test
+    public void testRequestReaderKeepsOnlyNeededFields() throws IOException {
+        LambdaProxyRequest request = ProxyRequestReader.read(
+                new ByteArrayInputStream(PROXY_REQUEST.getBytes(StandardCharsets.UTF_8)));
+
+        assertThat(request.getHttpMethod()).isEqualTo("GET");
+        assertThat(request.getPath()).isEqualTo("/rewards");
+        assertThat(request.getQueryStringParameters()).containsEntry("since", "1");
+        assertThat(request.getHeaders()).containsEntry("Accept", "application/json");
+        assertThat(request.getBody()).isNull();
+        assertThat(request.getRequestContext()).isNull();
+    }
+
+    @Test
+    public void testRequestReaderDecodesBase64Body() throws IOException {
+        String body = Base64.getEncoder().encodeToString("{\"amount\":1}".getBytes(StandardCharsets.UTF_8));
+        LambdaProxyRequest request = ProxyRequestReader.read(new ByteArrayInputStream(
+                ("{\"httpMethod\":\"POST\",\"body\":\"" + body + "\",\"isBase64Encoded\":true}").getBytes(StandardCharsets.UTF_8)));
+
+        assertThat(request.getBody()).isEqualTo("{\"amount\":1}");
+        assertThat(request.getIsBase64Encoded()).isFalse();
+    }
+
+    @Test
+    public void testStreamedBodyAboveThresholdIsCompressed() throws IOException {
+        JsonNode response = writeDescriptions(2000, 1024);
+
+        assertThat(response.get("isBase64Encoded").asBoolean()).isTrue();
+        assertThat(response.get("headers").get("Content-Encoding").asText()).isEqualTo("gzip");
+        assertThat(response.get("headers").get("A").asText()).isEqualTo("b");
+
+        GZIPInputStream body = new GZIPInputStream(new ByteArrayInputStream(
+                Base64.getDecoder().decode(response.get("body").asText())));
+        JsonNode decoded = Jackson.getObjectMapper().readTree(body);
+        assertThat(decoded.get("descriptions").size()).isEqualTo(2000);
+        assertThat(decoded.get("descriptions").get(0).asText()).isEqualTo("Say \"thanks\" \u00e4");
+    }
+
+    @Test
+    public void testStreamedBodyBelowThresholdStaysPlain() throws IOException {
+        JsonNode response = writeDescriptions(2, 1024);
+
+        assertThat(response.has("isBase64Encoded")).isFalse();
+        assertThat(response.get("headers").has("Content-Encoding")).isFalse();
+        assertThat(response.get("headers").get("Vary").asText()).isEqualTo("Accept-Encoding");
+        assertThat(response.get("body").asText()).isEqualTo("{\"descriptions\":[\"Say \\\"thanks\\\" \u00e4\",\"Say \\\"thanks\\\" \u00e4\"]}");
+    }
+
+    private static JsonNode writeDescriptions(int count, int minBytes) throws IOException {
+        LambdaProxyRequest request = new LambdaProxyRequest();
+        request.setHeaders(Collections.singletonMap("Accept-Encoding", "gzip, deflate, br"));
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ProxyResponseWriter.writeJson(output, 200, ImmutableMap.of("A", "b"), request,
+                new ResponseCompression(minBytes, 1), body -> {
+                    body.writeStartObject();
+                    body.writeArrayFieldStart("descriptions");
+                    for (int i = 0; i < count; i++) {
+                        body.writeString("Say \"thanks\" \u00e4");
+                    }
+                    body.writeEndArray();
+                    body.writeEndObject();
+                });
+        return Jackson.jsonNodeOf(output.toString("UTF-8"));
+    }
+}
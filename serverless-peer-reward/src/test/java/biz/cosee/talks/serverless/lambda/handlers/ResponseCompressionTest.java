@@ -0,0 +1,88 @@
+package biz.cosee.talks.serverless.lambda.handlers;
+
+import biz.cosee.talks.serverless.lambda.generated.LambdaProxyRequest;
+import biz.cosee.talks.serverless.lambda.generated.LambdaProxyResponse;
+import biz.cosee.talks.serverless.lambda.handlers.ResponseCompression.Encoding;
+import com.amazonaws.util.json.Jackson;
+import com.google.common.io.ByteStreams;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ResponseCompressionTest {
+
+    private static final String BODY = IntStream.range(0, 200)
+            .mapToObj(i -> "{\"username\":\"user-" + i + "\",\"rewards\":" + i + "}")
+            .collect(Collectors.joining(",", "{\"users\":[", "]}"));
+
+    private final ResponseCompression compression = new ResponseCompression(1024, 1);
+
+    private static LambdaProxyRequest acceptingEncoding(String acceptEncoding) {
+        LambdaProxyRequest request = new LambdaProxyRequest();
+        request.setHeaders(Collections.singletonMap("accept-encoding", acceptEncoding));
+        return request;
+    }
+
+    private static LambdaProxyResponse response(String body) {
+        return LambdaProxyResponse.builder().statusCode(200).headers(CorsHeaders.build()).body(body).build();
+    }
+
+    @Test
+    public void whenNegotiatingShouldPickHighestQualityAndPreferGzip() {
+        assertThat(ResponseCompression.preferred("gzip, deflate, br")).isEqualTo(Encoding.GZIP);
+        assertThat(ResponseCompression.preferred("deflate, gzip;q=0.5")).isEqualTo(Encoding.DEFLATE);
+        assertThat(ResponseCompression.preferred("gzip;q=0, *")).isEqualTo(Encoding.DEFLATE);
+        assertThat(ResponseCompression.preferred("br")).isNull();
+        assertThat(ResponseCompression.preferred("identity")).isNull();
+        assertThat(ResponseCompression.preferred(null)).isNull();
+    }
+
+    @Test
+    public void whenClientAcceptsGzipShouldCompressAndFlagBase64() throws IOException {
+        LambdaProxyResponse response = compression.compress(acceptingEncoding("gzip"), response(BODY));
+
+        assertThat(response.getIsBase64Encoded()).isTrue();
+        assertThat(response.getHeaders()).containsEntry("Content-Encoding", "gzip").containsEntry("Vary", "Accept-Encoding");
+        byte[] compressed = Base64.getDecoder().decode(response.getBody());
+        assertThat(compressed.length).isLessThan(BODY.length() / 2);
+        assertThat(new String(ByteStreams.toByteArray(new GZIPInputStream(new ByteArrayInputStream(compressed))),
+                StandardCharsets.UTF_8)).isEqualTo(BODY);
+        assertThat(Jackson.jsonNodeOf(Jackson.toJsonString(response)).get("isBase64Encoded").asBoolean()).isTrue();
+    }
+
+    @Test
+    public void whenClientOnlyAcceptsDeflateShouldSendZlibStream() throws IOException {
+        LambdaProxyResponse response = compression.compress(acceptingEncoding("deflate"), response(BODY));
+
+        assertThat(response.getHeaders()).containsEntry("Content-Encoding", "deflate");
+        byte[] compressed = Base64.getDecoder().decode(response.getBody());
+        assertThat(new String(ByteStreams.toByteArray(new InflaterInputStream(new ByteArrayInputStream(compressed))),
+                StandardCharsets.UTF_8)).isEqualTo(BODY);
+    }
+
+    @Test
+    public void whenBelowThresholdOrNotAcceptedShouldStayPlain() {
+        LambdaProxyResponse small = compression.compress(acceptingEncoding("gzip"), response("{\"users\":[]}"));
+        assertThat(small.getBody()).isEqualTo("{\"users\":[]}");
+        assertThat(small.getHeaders()).doesNotContainKey("Content-Encoding");
+        assertThat(Jackson.toJsonString(small)).doesNotContain("isBase64Encoded");
+
+        LambdaProxyResponse notAccepted = compression.compress(new LambdaProxyRequest(), response(BODY));
+        assertThat(notAccepted.getBody()).isEqualTo(BODY);
+        assertThat(notAccepted.getIsBase64Encoded()).isNull();
+
+        LambdaProxyResponse disabled = new ResponseCompression(-1, 1).compress(acceptingEncoding("gzip"), response(BODY));
+        assertThat(disabled.getBody()).isEqualTo(BODY);
+        assertThat(disabled.getHeaders()).doesNotContainKey("Vary");
+    }
+}
@@ -0,0 +1,49 @@
+package biz.cosee.talks.serverless.lambda.leaderboard;
+
+import biz.cosee.talks.serverless.Reward;
+import biz.cosee.talks.serverless.lambda.generated.LambdaProxyRequest;
+import biz.cosee.talks.serverless.lambda.generated.LambdaProxyResponse;
+import biz.cosee.talks.serverless.lambda.handlers.TableProvisioning;
+import biz.cosee.talks.serverless.memory.InMemoryRewardStore;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LeaderboardHandlerTest {
+
+    private final InMemoryRewardStore store = new InMemoryRewardStore();
+    private final LeaderboardHandler handler = new LeaderboardHandler(store, new TableProvisioning(store, TableProvisioning.Mode.NONE));
+
+    private static LambdaProxyRequest limit(String value) {
+        LambdaProxyRequest request = new LambdaProxyRequest();
+        request.setHttpMethod("GET");
+        request.setQueryStringParameters(Collections.singletonMap("limit", value));
+        return request;
+    }
+
+    @Test
+    public void whenNoPeriodIsGivenShouldRankAllTime() {
+        store.rewardUser(Reward.builder().givenByUsername("andreas").rewardedUser("alex").amount(10).ts(1L).build());
+        store.rewardUser(Reward.builder().givenByUsername("alex").rewardedUser("andreas").amount(5).ts(2L).build());
+
+        LambdaProxyResponse response = handler.handle(limit("1"));
+
+        assertThat(response.getStatusCode()).isEqualTo(200);
+        assertThat(response.getBody()).contains("\"period\":\"all\"").contains("alex").doesNotContain("andreas");
+    }
+
+    @Test
+    public void whenLimitIsNoNumberShouldRespondWithBadRequest() {
+        assertThat(handler.handle(limit("ten")).getStatusCode()).isEqualTo(400);
+    }
+
+    @Test
+    public void whenLimitIsNotPositiveShouldRespondWithBadRequest() {
+        LambdaProxyResponse response = handler.handle(limit("-1"));
+
+        assertThat(response.getStatusCode()).isEqualTo(400);
+        assertThat(response.getBody()).contains("Invalid limit: -1");
+    }
+}
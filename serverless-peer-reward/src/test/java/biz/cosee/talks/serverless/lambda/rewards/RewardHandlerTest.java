@@ -0,0 +1,77 @@
+package biz.cosee.talks.serverless.lambda.rewards;
+
+import biz.cosee.talks.serverless.Reward;
+import biz.cosee.talks.serverless.lambda.generated.LambdaProxyRequest;
+import biz.cosee.talks.serverless.lambda.generated.LambdaProxyResponse;
+import biz.cosee.talks.serverless.lambda.handlers.TableProvisioning;
+import biz.cosee.talks.serverless.memory.InMemoryRewardStore;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RewardHandlerTest {
+
+    private final InMemoryRewardStore store = new InMemoryRewardStore();
+    private final RewardHandler handler = new RewardHandler(store, new TableProvisioning(store, TableProvisioning.Mode.NONE));
+
+    private static LambdaProxyRequest get(String parameter, String value) {
+        Map<String, String> query = new HashMap<>();
+        query.put(parameter, value);
+
+        LambdaProxyRequest request = new LambdaProxyRequest();
+        request.setHttpMethod("GET");
+        request.setQueryStringParameters(query);
+        return request;
+    }
+
+    @Test
+    public void whenRewardsAreUnchangedShouldRespondWithNotModified() {
+        store.rewardUser(Reward.builder().givenByUsername("andreas").rewardedUser("alex").amount(10).ts(1L).build());
+        String etag = handler.handle(get("limit", "10")).getHeaders().get("ETag");
+
+        LambdaProxyRequest conditional = get("limit", "10");
+        conditional.setHeaders(Collections.singletonMap("If-None-Match", etag));
+        assertThat(handler.handle(conditional).getStatusCode()).isEqualTo(304);
+
+        store.rewardUser(Reward.builder().givenByUsername("alex").rewardedUser("andreas").amount(5).ts(2L).build());
+        assertThat(handler.handle(conditional).getStatusCode()).isEqualTo(200);
+    }
+
+    @Test
+    public void whenCursorIsMalformedShouldRespondWithBadRequest() {
+        LambdaProxyResponse response = handler.handle(get("cursor", "garbage"));
+
+        assertThat(response.getStatusCode()).isEqualTo(400);
+        assertThat(response.getBody()).contains("Invalid cursor: garbage");
+    }
+
+    @Test
+    public void whenCursorLacksADayShouldRespondWithBadRequest() {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+
+        assertThat(handler.handle(get("cursor", encoder.encodeToString("{\"ts\":1}".getBytes(StandardCharsets.UTF_8))))
+                .getStatusCode()).isEqualTo(400);
+        assertThat(handler.handle(get("cursor", encoder.encodeToString("{\"id\":\"today\",\"ts\":1}".getBytes(StandardCharsets.UTF_8))))
+                .getStatusCode()).isEqualTo(400);
+    }
+
+    @Test
+    public void whenDateIsMalformedShouldRespondWithBadRequest() {
+        LambdaProxyResponse response = handler.handle(get("from", "last-monday"));
+
+        assertThat(response.getStatusCode()).isEqualTo(400);
+    }
+
+    @Test
+    public void whenSinceIsNoNumberShouldRespondWithBadRequest() {
+        LambdaProxyResponse response = handler.handle(get("since", "yesterday"));
+
+        assertThat(response.getStatusCode()).isEqualTo(400);
+    }
+}
@@ -4,6 +4,7 @@ import biz.cosee.talks.serverless.Reward;
 import com.amazonaws.util.json.Jackson;
 import org.junit.Test;
 
+import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -30,6 +31,12 @@ public class RewardResponseTest {
         assertThat(serializedJson).isEqualTo(REWARD_RESPONSE);
     }
 
+    @Test
+    public void testSerializationWithCursor() {
+        RewardResponse page = RewardResponse.builder().rewards(emptyList()).ts(1L).cursor("abc").build();
+        assertThat(Jackson.toJsonString(page)).isEqualTo("{\"rewards\":[],\"ts\":1,\"cursor\":\"abc\"}");
+    }
+
     @Test
     public void testDeserialization() {
         RewardResponse rewardResponse = Jackson.fromJsonString(REWARD_RESPONSE, RewardResponse.class);
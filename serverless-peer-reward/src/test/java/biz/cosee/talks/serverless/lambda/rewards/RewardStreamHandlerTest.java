@@ -0,0 +1,41 @@
+package biz.cosee.talks.serverless.lambda.rewards;
+
+import biz.cosee.talks.serverless.Reward;
+import biz.cosee.talks.serverless.lambda.handlers.TableProvisioning;
+import biz.cosee.talks.serverless.memory.InMemoryRewardStore;
+import com.amazonaws.util.json.Jackson;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RewardStreamHandlerTest {
+
+    private final InMemoryRewardStore store = new InMemoryRewardStore();
+    private final RewardStreamHandler handler = new RewardStreamHandler(store, new TableProvisioning(store, TableProvisioning.Mode.NONE));
+
+    private JsonNode since(String etag) throws IOException {
+        String headers = etag == null ? "{}" : "{\"If-None-Match\":" + Jackson.toJsonString(etag) + "}";
+        String request = "{\"httpMethod\":\"GET\",\"headers\":" + headers + ",\"queryStringParameters\":{\"since\":\"0\"},\"body\":null}";
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        handler.handleRequest(new ByteArrayInputStream(request.getBytes(StandardCharsets.UTF_8)), output, null);
+        return Jackson.jsonNodeOf(output.toString("UTF-8"));
+    }
+
+    @Test
+    public void whenStreamedRewardsAreUnchangedShouldRespondWithNotModified() throws IOException {
+        store.rewardUser(Reward.builder().givenByUsername("andreas").rewardedUser("alex").amount(10).ts(1L).build());
+        String etag = since(null).get("headers").get("ETag").asText();
+
+        assertThat(since(etag).get("statusCode").asInt()).isEqualTo(304);
+
+        store.rewardUser(Reward.builder().givenByUsername("alex").rewardedUser("andreas").amount(5).ts(2L).build());
+        assertThat(since(etag).get("statusCode").asInt()).isEqualTo(200);
+    }
+}
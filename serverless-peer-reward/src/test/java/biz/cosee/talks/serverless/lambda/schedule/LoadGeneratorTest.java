@@ -0,0 +1,47 @@
+package biz.cosee.talks.serverless.lambda.schedule;
+
+import biz.cosee.talks.serverless.Reward;
+import biz.cosee.talks.serverless.User;
+import biz.cosee.talks.serverless.memory.InMemoryRewardStore;
+import biz.cosee.talks.serverless.metrics.OperationStats;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LoadGeneratorTest {
+
+    @Test
+    public void whenRunningAgainstMemoryShouldIssueEveryScheduledRequest() throws Exception {
+        InMemoryRewardStore store = new InMemoryRewardStore();
+        LoadSettings settings = new LoadSettings();
+        settings.setRate(500);
+        settings.setDurationSeconds(1);
+        settings.setConcurrency(4);
+        settings.setUsers(10);
+
+        LoadReport report = new LoadGenerator(store, settings).run();
+
+        assertThat(report.getRequests()).isEqualTo(500);
+        assertThat(report.getOperations().stream().mapToLong(OperationStats::getCount).sum()).isEqualTo(500);
+        assertThat(report.getOperations()).allMatch(stats -> stats.getErrors() == 0);
+        assertThat(report.getOperations()).extracting(OperationStats::getOperation).contains("load.rewardUser");
+        assertThat(report.getThrottles()).isEqualTo(0);
+        assertThat(store.retrieveUsers()).isNotEmpty();
+    }
+
+    @Test
+    public void whenPickingRandomRewardShouldNeverRewardTheGiver() {
+        List<User> users = Arrays.asList(User.builder().username("a").build(), User.builder().username("b").build());
+        Random random = new Random(42);
+
+        for (int i = 0; i < 100; i++) {
+            Reward reward = RandomRewardHandler.randomReward(users, random);
+            assertThat(reward.getGivenByUsername()).isNotEqualTo(reward.getRewardedUser());
+        }
+        assertThat(users).hasSize(2);
+    }
+}
@@ -0,0 +1,25 @@
+package biz.cosee.talks.serverless.lambda.schedule;
+
+import biz.cosee.talks.serverless.Reward;
+import biz.cosee.talks.serverless.lambda.handlers.TableProvisioning;
+import biz.cosee.talks.serverless.memory.InMemoryRewardStore;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RandomRewardHandlerTest {
+
+    private final InMemoryRewardStore store = new InMemoryRewardStore();
+    private final RandomRewardHandler handler = new RandomRewardHandler(store, new TableProvisioning(store, TableProvisioning.Mode.NONE));
+
+    @Test
+    public void whenInvokedAgainShouldRewardKnownUsersWhileRefreshingThem() {
+        store.rewardUser(Reward.builder().givenByUsername("andreas").rewardedUser("alex").amount(10).ts(1L).build());
+
+        handler.handleRequest(null, null);
+        handler.handleRequest(null, null);
+
+        assertThat(store.retrieveRewardsSince(0L)).hasSize(3)
+                .allMatch(reward -> !reward.getGivenByUsername().equals(reward.getRewardedUser()));
+    }
+}